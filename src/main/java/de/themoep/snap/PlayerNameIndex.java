@@ -0,0 +1,100 @@
+package de.themoep.snap;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.forwarding.SnapPlayer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Case-insensitive index of the online players by name. Exact lookups go through a hash map of the lower case
+ * names while prefix searches walk a sorted skip list so they only touch the names that actually match.
+ * Lookups never take a lock.
+ */
+public class PlayerNameIndex {
+    private final Map<String, SnapPlayer> byName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, SnapPlayer> sorted = new ConcurrentSkipListMap<>();
+
+    /**
+     * Add a player to the index if no player with the same name is in it yet
+     * @param player    The player
+     */
+    public void add(SnapPlayer player) {
+        String key = fold(player.getName());
+        // Update the sorted map inside of the compute so that it can't get out of sync with concurrent removals
+        byName.computeIfAbsent(key, k -> {
+            sorted.put(k, player);
+            return player;
+        });
+    }
+
+    /**
+     * Remove a player from the index. Nothing happens if another player with the same name in a different case
+     * got indexed instead of them.
+     * @param player    The player
+     */
+    public void remove(SnapPlayer player) {
+        byName.computeIfPresent(fold(player.getName()), (k, indexed) -> {
+            if (indexed != player) {
+                return indexed;
+            }
+            sorted.remove(k, player);
+            return null;
+        });
+    }
+
+    /**
+     * Get a player by their exact name, ignoring the case
+     * @param name  The name
+     * @return The player or null if no player with that name is online
+     */
+    public SnapPlayer get(String name) {
+        return byName.get(fold(name));
+    }
+
+    /**
+     * Get all players whose name starts with a prefix, ignoring the case
+     * @param prefix    The prefix
+     * @return The matching players sorted by name
+     */
+    public Collection<SnapPlayer> match(String prefix) {
+        NavigableMap<String, SnapPlayer> matches = range(prefix);
+        return matches.isEmpty() ? Collections.emptyList() : new ArrayList<>(matches.values());
+    }
+
+    private NavigableMap<String, SnapPlayer> range(String prefix) {
+        String key = fold(prefix);
+        if (key.isEmpty()) {
+            return sorted;
+        }
+        return sorted.subMap(key, true, key + Character.MAX_VALUE, false);
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -28,6 +28,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class PluginConfig {
@@ -176,6 +178,15 @@ public class PluginConfig {
         return getRawConfig(path).getBoolean(def);
     }
 
+    public List<String> getStringList(String path) {
+        try {
+            return getRawConfig(path).getList(String.class, Collections.emptyList());
+        } catch (SerializationException e) {
+            plugin.getLogger().error("Could not read list at " + path, e);
+            return Collections.emptyList();
+        }
+    }
+
     private static Object[] splitPath(String key) {
         return PATH_PATTERN.split(key);
     }
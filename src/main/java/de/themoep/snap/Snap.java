@@ -16,12 +16,17 @@ import de.themoep.snap.forwarding.SnapPlayer;
 import de.themoep.snap.forwarding.SnapServerInfo;
 import net.kyori.adventure.key.InvalidKeyException;
 import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
 import org.slf4j.Logger;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -40,10 +45,14 @@ public class Snap {
 
     private boolean throwUnsupportedException = true;
     private boolean registerAllForwardingListeners = false;
+    private long permissionCacheTtl = TimeUnit.SECONDS.toNanos(5);
+    private Component timeoutMessage = Component.text("Login timed out, please try again");
 
     private final Map<UUID, SnapPlayer> players = new ConcurrentHashMap<>();
-    private final Map<String, SnapPlayer> playerNames = new ConcurrentHashMap<>();
+    private final PlayerNameIndex playerNames = new PlayerNameIndex();
+    private volatile List<ProxiedPlayer> playerSnapshot = List.of();
     private final Map<String, SnapServerInfo> servers = new ConcurrentHashMap<>();
+    private final Map<UUID, SnapServerInfo> playerServers = new ConcurrentHashMap<>();
     private final Set<UUID> transferred = ConcurrentHashMap.newKeySet();
 
     private final Table<UUID, Key, CompletableFuture<byte[]>> cookieRequests = HashBasedTable.create();
@@ -72,6 +81,9 @@ public class Snap {
             bungeeAdapter = new SnapBungeeAdapter(this);
             bungeeAdapter.loadPlugins();
             getProxy().getEventManager().register(this, new SnapListener(this));
+            getProxy().getCommandManager().register(
+                    getProxy().getCommandManager().metaBuilder("snap").plugin(this).build(),
+                    new SnapCommand(this));
         } else {
             getLogger().error("Unable to load config! Plugin will not enable.");
         }
@@ -87,6 +99,10 @@ public class Snap {
         if (config.load()) {
             throwUnsupportedException = config.getBoolean("throw-unsupported-exception", throwUnsupportedException);
             registerAllForwardingListeners = config.getBoolean("register-all-listeners", registerAllForwardingListeners);
+            permissionCacheTtl = TimeUnit.MILLISECONDS.toNanos(config.getInt("permission-cache-ttl", 5000));
+            if (config.has("async-event-timeout-message")) {
+                timeoutMessage = LegacyComponentSerializer.legacyAmpersand().deserialize(config.getString("async-event-timeout-message"));
+            }
             return true;
         }
         return false;
@@ -100,6 +116,18 @@ public class Snap {
         return registerAllForwardingListeners;
     }
 
+    /**
+     * Get how long results of permission checks from Bungee plugins get cached
+     * @return The time in nanoseconds, 0 if they shouldn't be cached
+     */
+    public long getPermissionCacheTtl() {
+        return permissionCacheTtl;
+    }
+
+    public Component getTimeoutMessage() {
+        return timeoutMessage;
+    }
+
     public ProxyServer getProxy() {
         return proxy;
     }
@@ -120,21 +148,109 @@ public class Snap {
         return players;
     }
 
-    public Map<String, SnapPlayer> getPlayerNames() {
+    public PlayerNameIndex getPlayerNames() {
         return playerNames;
     }
 
+    /**
+     * Get an immutable snapshot of the online players. It only gets rebuilt when a player joins or quits
+     * so it can be handed out to plugins without copying it.
+     * @return The online players
+     */
+    public Collection<ProxiedPlayer> getPlayerSnapshot() {
+        return playerSnapshot;
+    }
+
+    private synchronized void rebuildPlayerSnapshot() {
+        playerSnapshot = List.<ProxiedPlayer>copyOf(players.values());
+    }
+
     public SnapPlayer getPlayer(Player player) {
-        SnapPlayer p = players.computeIfAbsent(player.getUniqueId(), u -> new SnapPlayer(this, player));
-        playerNames.putIfAbsent(p.getName(), p);
+        SnapPlayer p = players.get(player.getUniqueId());
+        if (p != null) {
+            return p;
+        }
+        p = new SnapPlayer(this, player);
+        SnapPlayer previous = players.putIfAbsent(player.getUniqueId(), p);
+        if (previous != null) {
+            return previous;
+        }
+        playerNames.add(p);
+        rebuildPlayerSnapshot();
         return p;
     }
 
+    /**
+     * Remove the wrapper of a player
+     * @param player    The Velocity player
+     * @return The removed wrapper or null if there was none
+     */
+    SnapPlayer removePlayer(Player player) {
+        SnapPlayer snapPlayer = players.remove(player.getUniqueId());
+        SnapServerInfo server = playerServers.remove(player.getUniqueId());
+        if (snapPlayer != null) {
+            playerNames.remove(snapPlayer);
+            if (server != null) {
+                server.removePlayer(snapPlayer);
+            }
+            snapPlayer.retireServers(null);
+            rebuildPlayerSnapshot();
+        }
+        return snapPlayer;
+    }
+
+    /**
+     * Move a player to the player index of the server they connected to
+     * @param player    The Velocity player
+     * @param server    The server they are connected to now
+     */
+    void updatePlayerServer(Player player, RegisteredServer server) {
+        if (!player.isActive()) {
+            return;
+        }
+        SnapPlayer snapPlayer = getPlayer(player);
+        SnapServerInfo serverInfo = getServerInfo(server);
+        SnapServerInfo previous = playerServers.put(player.getUniqueId(), serverInfo);
+        if (previous != null && previous != serverInfo) {
+            previous.removePlayer(snapPlayer);
+        }
+        serverInfo.addPlayer(snapPlayer);
+        if (!player.isActive() && playerServers.remove(player.getUniqueId(), serverInfo)) {
+            // Disconnected while we were moving them
+            serverInfo.removePlayer(snapPlayer);
+        }
+    }
+
     public SnapServerInfo getServerInfo(RegisteredServer server) {
         if (server == null) {
             return null;
         }
-        return servers.computeIfAbsent(server.getServerInfo().getName(), u -> new SnapServerInfo(this, server));
+        SnapServerInfo serverInfo = servers.get(server.getServerInfo().getName());
+        if (serverInfo != null && serverInfo.getServer() == server) {
+            return serverInfo;
+        }
+        // Not wrapped yet or the server got replaced on Velocity with one of the same name
+        SnapServerInfo[] replaced = new SnapServerInfo[1];
+        serverInfo = servers.compute(server.getServerInfo().getName(), (n, s) -> {
+            if (s != null && s.getServer() == server) {
+                return s;
+            }
+            replaced[0] = s;
+            return new SnapServerInfo(this, server);
+        });
+        if (replaced[0] != null) {
+            // Move the players of the replaced wrapper over so that the player index stays intact
+            for (Map.Entry<UUID, SnapServerInfo> entry : playerServers.entrySet()) {
+                if (entry.getValue() == replaced[0] && playerServers.replace(entry.getKey(), replaced[0], serverInfo)) {
+                    SnapPlayer snapPlayer = players.get(entry.getKey());
+                    if (snapPlayer != null) {
+                        replaced[0].removePlayer(snapPlayer);
+                        serverInfo.addPlayer(snapPlayer);
+                    }
+                }
+            }
+        }
+        return serverInfo;
     }
 
     public Map<String, SnapServerInfo> getServers() {
@@ -161,8 +277,10 @@ public class Snap {
     }
 
     void invalidate(Player player) {
-        players.remove(player.getUniqueId());
-        playerNames.remove(player.getUsername());
+        SnapPlayer snapPlayer = removePlayer(player);
+        if (snapPlayer != null) {
+            snapPlayer.invalidatePermissionCache();
+        }
         cookieRequests.row(player.getUniqueId()).clear();
         transferred.remove(player.getUniqueId());
     }
@@ -19,12 +19,22 @@ package de.themoep.snap;
  */
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.event.EventHandler;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.proxy.VelocityServer;
+import com.velocitypowered.proxy.network.ConnectionManager;
+import de.themoep.snap.event.HandlerList;
+import de.themoep.snap.event.SnapEventBus;
+import de.themoep.snap.forwarding.SnapChannelInitializer;
 import de.themoep.snap.forwarding.SnapCommandSender;
 import de.themoep.snap.forwarding.SnapProxyServer;
+import de.themoep.snap.forwarding.listener.AdmissionControl;
+import de.themoep.snap.forwarding.listener.PlayerLanes;
 import de.themoep.snap.forwarding.listener.ChatListener;
 import de.themoep.snap.forwarding.listener.ClientConnectListener;
 import de.themoep.snap.forwarding.listener.ConnectionInitListener;
@@ -45,11 +55,15 @@ import de.themoep.snap.forwarding.listener.ServerKickListener;
 import de.themoep.snap.forwarding.listener.ServerSwitchListener;
 import de.themoep.snap.forwarding.listener.SettingsChangedListener;
 import de.themoep.snap.forwarding.listener.TabCompleteResponseListener;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.plugin.Command;
+import net.md_5.bungee.api.plugin.Event;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.api.plugin.PluginManager;
-import net.md_5.bungee.event.EventBus;
+import net.md_5.bungee.api.plugin.TabExecutor;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.CustomClassLoaderConstructor;
 import org.yaml.snakeyaml.introspector.PropertyUtils;
@@ -58,10 +72,21 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
 import java.util.logging.Handler;
 
 public class SnapBungeeAdapter {
@@ -69,9 +94,17 @@ public class SnapBungeeAdapter {
     private final PluginManager pluginManager;
     private final File pluginsFolder;
     private final Snap snap;
-    private final List<ForwardingListener> forwardingListeners = new ArrayList<>();
-
-    private final Map<Class<?>, Map<Byte, Map<Object, Method[]>>> registeredBungeeListeners;
+    private final Map<Class<?>, ForwardingListener<?>> forwardingListeners = new LinkedHashMap<>();
+    private final Map<ForwardingListener<?>, Map<PostOrder, EventHandler<?>>> registeredHandlers = new HashMap<>();
+    private final Map<ForwardingListener<?>, Object> subscribers = new HashMap<>();
+    private final Set<Object> registeredSubscribers = new HashSet<>();
+    private final SnapEventBus eventBus;
+    private final ExecutorService asyncEventExecutor;
+    private final AdmissionControl loginAdmission;
+    private final ExecutorService observerExecutor;
+    private final ExecutorService laneExecutor;
+    private final PlayerLanes playerLanes;
+    private boolean pluginsLoaded = false;
 
     SnapBungeeAdapter(Snap snap) throws ClassNotFoundException, IllegalAccessException, NoSuchFieldException, IOException, NoSuchMethodException, InvocationTargetException {
         this.snap = snap;
@@ -96,24 +129,67 @@ public class SnapBungeeAdapter {
         Yaml yaml = new Yaml(constructor);
         fYaml.set(pluginManager, yaml);
 
-        // Get event bus from PluginManager
+        asyncEventExecutor = createAsyncEventExecutor(snap.getConfig().getString("async-event-executor", "velocity"));
+        observerExecutor = Executors.newFixedThreadPool(Math.max(1, snap.getConfig().getInt("observe-only.threads", 1)),
+                new ThreadFactoryBuilder().setNameFormat("Snap Observer Thread #%d").setDaemon(true).build());
+        if (snap.getConfig().getBoolean("player-lanes.enabled", false)) {
+            laneExecutor = Executors.newFixedThreadPool(Math.max(1, snap.getConfig().getInt("player-lanes.threads", Runtime.getRuntime().availableProcessors())),
+                    new ThreadFactoryBuilder().setNameFormat("Snap Player Lane Thread #%d").setDaemon(true).build());
+            playerLanes = new PlayerLanes(snap, laneExecutor, snap.getConfig().getInt("player-lanes.lanes", 64));
+        } else {
+            laneExecutor = null;
+            playerLanes = null;
+        }
+        int loginPermits = snap.getConfig().getInt("login-admission.permits", 0);
+        if (loginPermits > 0) {
+            loginAdmission = new AdmissionControl(snap, "Login", loginPermits,
+                    snap.getConfig().getInt("login-admission.queue-size", 1000),
+                    snap.getConfig().getInt("login-admission.queue-timeout", 10000),
+                    snap.getConfig().getInt("login-admission.hold-timeout", 3000),
+                    LegacyComponentSerializer.legacyAmpersand().deserialize(snap.getConfig().getString("login-admission.reject-message", "The server is busy, please try again later")));
+        } else {
+            loginAdmission = null;
+        }
+
+        setupEvents();
+
+        // Replace event bus of the PluginManager with our own which notifies us whenever the handlers of an event change
+        eventBus = new SnapEventBus(snap, pluginManager, observerExecutor, this::updateForwardingListener);
         Field fEventBus = pluginManager.getClass().getDeclaredField("eventBus");
         fEventBus.setAccessible(true);
-        EventBus eventBus = (EventBus) fEventBus.get(pluginManager);
-
-        // Get listener map from EventBus
-        Field fListeners = eventBus.getClass().getDeclaredField("byListenerAndPriority");
-        fListeners.setAccessible(true);
-        registeredBungeeListeners = (Map<Class<?>, Map<Byte, Map<Object, Method[]>>>) fListeners.get(eventBus);
+        fEventBus.set(pluginManager, eventBus);
+    }
 
-        setupEvents();
+    private ExecutorService createAsyncEventExecutor(String type) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "velocity":
+                return null;
+            case "virtual":
+                try {
+                    // Virtual threads are only available on Java 21+
+                    ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                    snap.getLogger().info("Calling Bungee async events on virtual threads");
+                    return executor;
+                } catch (ReflectiveOperationException e) {
+                    snap.getLogger().warn("Virtual threads are not available on this Java version (" + System.getProperty("java.version") + "), using a cached thread pool for Bungee async events instead");
+                }
+                // fall through
+            case "pool":
+                return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Snap Async Event Thread #%d").setDaemon(true).build());
+            default:
+                snap.getLogger().warn("Unknown async-event-executor " + type + ", using Velocity's event executor");
+                return null;
+        }
     }
 
     private void setupEvents() {
         // Register forwarding events
         addListener(new ChatListener(snap));
         addListener(new ClientConnectListener(snap));
-        addListener(new ConnectionInitListener(snap));
+        ConnectionInitListener connectionInitListener = new ConnectionInitListener(snap);
+        if (!snap.getConfig().getBoolean("early-connection-init", true) || !installChannelInitializer(connectionInitListener)) {
+            addListener(connectionInitListener);
+        }
         addListener(new LoginListener(snap));
         addListener(new PlayerDisconnectListener(snap));
         addListener(new PlayerHandshakeListener(snap));
@@ -134,8 +210,35 @@ public class SnapBungeeAdapter {
         addListener(new TabCompleteResponseListener(snap));
     }
 
-    private void addListener(ForwardingListener listener) {
-        forwardingListeners.add(listener);
+    /**
+     * Wrap Velocity's server channel initializer so that the ConnectionInitEvent can be called directly on new connections
+     * @param listener  The listener which forwards the event
+     * @return Whether the initializer could be installed
+     */
+    private boolean installChannelInitializer(ConnectionInitListener listener) {
+        try {
+            Field fCm = VelocityServer.class.getDeclaredField("cm");
+            fCm.setAccessible(true);
+            ConnectionManager cm = (ConnectionManager) fCm.get(snap.getProxy());
+            ChannelInitializer<Channel> original = cm.getServerChannelInitializer().get();
+            cm.getServerChannelInitializer().set(new SnapChannelInitializer(snap, original, listener));
+            return true;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            snap.getLogger().warn("Unable to hook into Velocity's channel initializer, ConnectionInitEvent will be called on PreLoginEvent instead", e);
+            return false;
+        }
+    }
+
+    private void addListener(ForwardingListener<?> listener) {
+        forwardingListeners.put(listener.getForwardedEvent(), listener);
+        if (listener.getExecutionMode() != ForwardingListener.ExecutionMode.ASYNC) {
+            Object subscriber = listener.createSubscriber();
+            if (subscriber != null) {
+                subscribers.put(listener, subscriber);
+            } else if (snap.getConfig().has("execution-modes." + listener.getForwardedEvent().getSimpleName())) {
+                snap.getLogger().warn(listener.getForwardedEvent().getSimpleName() + " can only be forwarded async, ignoring execution mode " + listener.getExecutionMode());
+            }
+        }
     }
 
     void loadPlugins() {
@@ -162,6 +265,17 @@ public class SnapBungeeAdapter {
                             return command.hasPermission(convert(invocation.source()));
                         }
 
+                        @Override
+                        public List<String> suggest(Invocation invocation) {
+                            if (!(command instanceof TabExecutor tabExecutor)) {
+                                return Collections.emptyList();
+                            }
+                            String[] args = invocation.arguments();
+                            // Bungee always passes the (empty) argument that is being completed
+                            Iterable<String> completions = tabExecutor.onTabComplete(convert(invocation.source()), args.length == 0 ? new String[]{""} : args);
+                            return completions != null ? Lists.newArrayList(completions) : Collections.emptyList();
+                        }
+
                         private CommandSender convert(CommandSource source) {
                             SnapCommandSender sender;
                             if (source instanceof Player) {
@@ -179,22 +293,127 @@ public class SnapBungeeAdapter {
     }
 
     /**
-     * Register the forwarding listeners that are required for the events of the plugins to work
+     * Register the forwarding listeners that are required for the events of the plugins to work.
+     * Afterwards listeners get (un)registered whenever handlers for their event appear or disappear.
      */
-    private void registerForwardingListeners() {
-        for (ForwardingListener forwardingListener : forwardingListeners) {
-            if (snap.shouldRegisterAllForwardingListeners()
-                    || registeredBungeeListeners.containsKey(forwardingListener.getForwardedEvent())) {
-                snap.getLogger().info("Registering forwarding listener for " + forwardingListener.getForwardedEvent().getSimpleName());
-                // TODO: actually use the priority
-                snap.getProxy().getEventManager().register(snap, forwardingListener);
+    private synchronized void registerForwardingListeners() {
+        pluginsLoaded = true;
+        for (Class<?> eventClass : forwardingListeners.keySet()) {
+            updateForwardingListener(eventClass);
+        }
+    }
+
+    /**
+     * Register or unregister the forwarding handlers of an event depending on the priorities of the Bungee handlers for it.
+     * Every priority band gets its own Velocity handler in the matching post order.
+     * @param eventClass The Bungee event class
+     */
+    private synchronized void updateForwardingListener(Class<?> eventClass) {
+        ForwardingListener<?> forwardingListener = forwardingListeners.get(eventClass);
+        if (forwardingListener == null || !pluginsLoaded) {
+            return;
+        }
+        HandlerList bands = eventBus.getHandlers(eventClass);
+        Set<PostOrder> orders = EnumSet.noneOf(PostOrder.class);
+        if (bands != null || snap.shouldRegisterAllForwardingListeners()) {
+            if (forwardingListener.getOrder() != null) {
+                orders.add(forwardingListener.getOrder());
+            } else if (bands != null) {
+                orders.addAll(bands.getBands());
+            } else {
+                orders.add(PostOrder.NORMAL);
+            }
+        }
+        updateHandlers(forwardingListener, orders);
+    }
+
+    private <E> void updateHandlers(ForwardingListener<E> forwardingListener, Set<PostOrder> orders) {
+        String name = forwardingListener.getForwardedEvent().getSimpleName();
+        forwardingListener.setBands(orders);
+        Object subscriber = subscribers.get(forwardingListener);
+        if (subscriber != null) {
+            // Velocity always calls programmatically registered handlers async, inline execution needs a subscriber
+            forwardingListener.setSubscribedBands(orders);
+            if (orders.isEmpty()) {
+                if (registeredSubscribers.remove(subscriber)) {
+                    snap.getLogger().info("Unregistering forwarding subscriber for " + name);
+                    snap.getProxy().getEventManager().unregisterListener(snap, subscriber);
+                }
+            } else if (registeredSubscribers.add(subscriber)) {
+                snap.getLogger().info("Registering forwarding subscriber for " + name + " (" + orders + ")");
+                snap.getProxy().getEventManager().register(snap, subscriber);
+            }
+            return;
+        }
+        Map<PostOrder, EventHandler<?>> handlers = registeredHandlers.computeIfAbsent(forwardingListener, l -> new EnumMap<>(PostOrder.class));
+        for (Iterator<Map.Entry<PostOrder, EventHandler<?>>> it = handlers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<PostOrder, EventHandler<?>> entry = it.next();
+            if (!orders.contains(entry.getKey())) {
+                snap.getLogger().info("Unregistering forwarding listener for " + name + " (" + entry.getKey() + ")");
+                snap.getProxy().getEventManager().unregister(snap, entry.getValue());
+                it.remove();
+            }
+        }
+        for (PostOrder order : orders) {
+            if (!handlers.containsKey(order)) {
+                snap.getLogger().info("Registering forwarding listener for " + name + " (" + order + ")");
+                EventHandler<E> handler = forwardingListener.createHandler(forwardingListener.getOrder() != null ? null : order);
+                snap.getProxy().getEventManager().register(snap, forwardingListener.getEvent(), order, handler);
+                handlers.put(order, handler);
             }
         }
-        if (!snap.shouldRegisterAllForwardingListeners()) {
-            snap.getLogger().info("If you experience some plugin-event-listeners to not work properly then set register-all-listeners = true in the snap.conf!");
+    }
+
+    /**
+     * Check whether a Bungee event currently gets forwarded
+     * @param eventClass    The Bungee event class
+     * @return Whether a forwarding listener for it is registered with Velocity
+     */
+    public boolean isForwarding(Class<? extends Event> eventClass) {
+        ForwardingListener<?> forwardingListener = forwardingListeners.get(eventClass);
+        return forwardingListener != null && forwardingListener.isForwarding();
+    }
+
+    /**
+     * Call a Bungee event for the handlers in a specific priority band. This doesn't call the observers, they need
+     * to be posted with {@link #postObservers(Event, PostOrder)} once the result was written back to Velocity.
+     * @param event The event to call
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The called event
+     */
+    public <T extends Event> T callEvent(T event, PostOrder band) {
+        eventBus.post(event, band);
+        event.postCall();
+        return event;
+    }
+
+    /**
+     * Call the observing handlers of an event on the observer executor if the band is the one they come after.
+     * Their changes to the event won't have any effect as the result was already written back to Velocity.
+     * @param event     The event
+     * @param band      The post order band that was called or null if all handlers were called
+     * @param snapshot  Creates the copy of the event which the observers get called with
+     */
+    public void postObservers(Event event, PostOrder band, UnaryOperator<Event> snapshot) {
+        if (eventBus.shouldPostObservers(event, band)) {
+            Event observed = snapshot.apply(event);
+            observerExecutor.execute(() -> eventBus.postObservers(observed));
         }
     }
 
+    /**
+     * Check whether a band of handlers should be skipped if the event was already cancelled.
+     * Bungee has no way to ignore cancelled events so this is only the case when all
+     * handlers in the band belong to plugins configured in the ignore-cancelled list.
+     * @param eventClass    The Bungee event class
+     * @param band          The post order band
+     * @return Whether the band can be skipped for cancelled events
+     */
+    public boolean shouldSkipCancelled(Class<?> eventClass, PostOrder band) {
+        HandlerList handlers = eventBus.getHandlers(eventClass);
+        return handlers == null || handlers.shouldSkipCancelled(band);
+    }
+
     public SnapProxyServer getProxy() {
         return snapProxy;
     }
@@ -207,6 +426,34 @@ public class SnapBungeeAdapter {
         return pluginsFolder;
     }
 
+    public SnapEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Get the executor that the handlers of Bungee async events get called on
+     * @return The executor or null if they should be called on Velocity's event thread
+     */
+    public ExecutorService getAsyncEventExecutor() {
+        return asyncEventExecutor;
+    }
+
+    /**
+     * Get the lanes that events of a player get forwarded on in order
+     * @return The player lanes or null if events are forwarded on the thread that Velocity calls them on
+     */
+    public PlayerLanes getPlayerLanes() {
+        return playerLanes;
+    }
+
+    /**
+     * Get the admission control that limits how many PreLogin and Login events get forwarded at the same time
+     * @return The admission control or null if the amount is not limited
+     */
+    public AdmissionControl getLoginAdmission() {
+        return loginAdmission;
+    }
+
     // Code below is under the following license of BungeeCord:
     /*
      *  Copyright (c) 2012, md_5. All rights reserved.
@@ -254,5 +501,13 @@ public class SnapBungeeAdapter {
             getProxy().getScheduler().cancel(plugin);
             plugin.getExecutorService().shutdownNow();
         }
+        if (asyncEventExecutor != null) {
+            asyncEventExecutor.shutdown();
+        }
+        observerExecutor.shutdown();
+        eventBus.getWatchdog().shutdown();
+        if (laneExecutor != null) {
+            laneExecutor.shutdown();
+        }
     }
 }
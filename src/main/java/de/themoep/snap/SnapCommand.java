@@ -0,0 +1,161 @@
+package de.themoep.snap;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import de.themoep.snap.event.HandlerMethod;
+import de.themoep.snap.forwarding.listener.AdmissionControl;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Admin command to inspect the state of Snap
+ */
+public class SnapCommand implements SimpleCommand {
+    private static final List<String> SUBCOMMANDS = Arrays.asList("status", "slow", "quarantine", "release");
+
+    private final Snap snap;
+
+    public SnapCommand(Snap snap) {
+        this.snap = snap;
+    }
+
+    @Override
+    public void execute(Invocation invocation) {
+        CommandSource source = invocation.source();
+        String[] args = invocation.arguments();
+        if (args.length == 0) {
+            source.sendMessage(Component.text("Usage: /snap <" + String.join("|", SUBCOMMANDS) + ">", NamedTextColor.RED));
+            return;
+        }
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "status":
+                sendStatus(source);
+                break;
+            case "slow":
+                sendSlowHandlers(source);
+                break;
+            case "quarantine":
+                sendQuarantine(source);
+                break;
+            case "release":
+                if (args.length < 2) {
+                    source.sendMessage(Component.text("Usage: /snap release <plugin|all>", NamedTextColor.RED));
+                } else {
+                    release(source, args[1]);
+                }
+                break;
+            default:
+                source.sendMessage(Component.text("Unknown subcommand " + args[0], NamedTextColor.RED));
+        }
+    }
+
+    private void sendStatus(CommandSource source) {
+        source.sendMessage(Component.text("Snap status:", NamedTextColor.YELLOW));
+        AdmissionControl admission = snap.getBungeeAdapter().getLoginAdmission();
+        if (admission != null) {
+            source.sendMessage(Component.text(admission.getName() + " admission: "
+                    + admission.getActive() + "/" + admission.getPermits() + " active, "
+                    + admission.getWaiting() + " waiting, "
+                    + admission.getAdmitted() + " admitted, "
+                    + admission.getQueued() + " queued, "
+                    + admission.getRejected() + " rejected, "
+                    + admission.getTimedOut() + " timed out", NamedTextColor.GRAY));
+        } else {
+            source.sendMessage(Component.text("Login admission: unlimited", NamedTextColor.GRAY));
+        }
+    }
+
+    private void sendSlowHandlers(CommandSource source) {
+        List<HandlerMethod> handlers = snap.getBungeeAdapter().getEventBus().getAllHandlers().stream()
+                .filter(h -> h.getSlowCalls() > 0)
+                .sorted(Comparator.comparingLong(HandlerMethod::getSlowCalls).reversed())
+                .collect(Collectors.toList());
+        if (!snap.getBungeeAdapter().getEventBus().getWatchdog().isEnabled()) {
+            source.sendMessage(Component.text("The watchdog is disabled", NamedTextColor.GRAY));
+            return;
+        }
+        long threshold = snap.getBungeeAdapter().getEventBus().getWatchdog().getThresholdMillis();
+        if (handlers.isEmpty()) {
+            source.sendMessage(Component.text("No handler took longer than " + threshold + "ms yet", NamedTextColor.GREEN));
+            return;
+        }
+        source.sendMessage(Component.text("Handlers that took longer than " + threshold + "ms:", NamedTextColor.YELLOW));
+        for (HandlerMethod handler : handlers) {
+            source.sendMessage(Component.text(handler.getPluginName() + " " + handler + ": "
+                    + handler.getSlowCalls() + " slow calls, max " + TimeUnit.NANOSECONDS.toMillis(handler.getMaxNanos()) + "ms", NamedTextColor.GRAY));
+        }
+    }
+
+    private void sendQuarantine(CommandSource source) {
+        List<HandlerMethod> handlers = snap.getBungeeAdapter().getEventBus().getAllHandlers().stream()
+                .filter(h -> h.isQuarantined() || h.getExceptions() > 0)
+                .collect(Collectors.toList());
+        if (handlers.isEmpty()) {
+            source.sendMessage(Component.text("No handler is quarantined or threw an exception", NamedTextColor.GREEN));
+            return;
+        }
+        source.sendMessage(Component.text("Quarantined and failing handlers:", NamedTextColor.YELLOW));
+        for (HandlerMethod handler : handlers) {
+            String state = handler.isQuarantined()
+                    ? "quarantined for " + TimeUnit.NANOSECONDS.toSeconds(handler.getQuarantineRemaining()) + "s (" + handler.getTrips() + "x in a row)"
+                    : "active";
+            source.sendMessage(Component.text(handler.getPluginName() + " " + handler + ": " + state + ", "
+                    + handler.getExceptions() + " exceptions", handler.isQuarantined() ? NamedTextColor.RED : NamedTextColor.GRAY));
+        }
+    }
+
+    private void release(CommandSource source, String plugin) {
+        int released = 0;
+        for (HandlerMethod handler : snap.getBungeeAdapter().getEventBus().getAllHandlers()) {
+            if ("all".equalsIgnoreCase(plugin) || handler.getPluginName().equalsIgnoreCase(plugin)) {
+                if (handler.isQuarantined()) {
+                    released++;
+                }
+                handler.resetQuarantine();
+            }
+        }
+        source.sendMessage(Component.text("Released " + released + " quarantined handlers", NamedTextColor.GREEN));
+    }
+
+    @Override
+    public List<String> suggest(Invocation invocation) {
+        String[] args = invocation.arguments();
+        if (args.length <= 1) {
+            String prefix = args.length == 0 ? "" : args[0].toLowerCase(Locale.ROOT);
+            return SUBCOMMANDS.stream().filter(s -> s.startsWith(prefix)).collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission("snap.command.admin");
+    }
+}
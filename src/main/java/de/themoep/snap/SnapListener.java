@@ -23,12 +23,20 @@ import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.ConnectionHandshakeEvent;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.player.CookieReceiveEvent;
 import com.velocitypowered.api.event.player.GameProfileRequestEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.event.proxy.server.ServerRegisteredEvent;
+import com.velocitypowered.api.event.proxy.server.ServerUnregisteredEvent;
 import com.velocitypowered.api.network.HandshakeIntent;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.util.GameProfile;
+import de.themoep.snap.forwarding.SnapPlayer;
+import de.themoep.snap.forwarding.listener.AdmissionControl;
 
 import java.util.UUID;
 
@@ -49,6 +57,15 @@ public class SnapListener {
         }
     }
 
+    @Subscribe(order = PostOrder.LAST)
+    public void onPreLoginLast(PreLoginEvent event) {
+        AdmissionControl admission = snap.getBungeeAdapter().getLoginAdmission();
+        if (admission != null && !event.getResult().isAllowed()) {
+            // Denied by a handler after the Bungee ones, it will never get to the LoginEvent
+            admission.releaseHeld(event.getConnection());
+        }
+    }
+
     @Subscribe(order = PostOrder.FIRST)
     public void onPlayerConnect(LoginEvent event) {
         if (event.getResult().isAllowed()) {
@@ -59,8 +76,37 @@ public class SnapListener {
     @Subscribe(order = PostOrder.LAST)
     public void onPlayerConnectLast(LoginEvent event) {
         if (!event.getResult().isAllowed()) {
-            snap.getPlayers().remove(event.getPlayer().getUniqueId());
-            snap.getPlayerNames().remove(event.getPlayer().getUsername());
+            snap.removePlayer(event.getPlayer());
+        } else {
+            // Permission plugins might only have loaded the player's data during the login
+            invalidatePermissions(event.getPlayer());
+        }
+    }
+
+    @Subscribe(order = PostOrder.FIRST)
+    public void onPostLogin(PostLoginEvent event) {
+        // The permission function got set up before the player's wrapper existed, drop anything cached since then
+        invalidatePermissions(event.getPlayer());
+    }
+
+    private void invalidatePermissions(Player player) {
+        SnapPlayer snapPlayer = snap.getPlayers().get(player.getUniqueId());
+        if (snapPlayer != null) {
+            snapPlayer.invalidatePermissionCache();
+        }
+    }
+
+    @Subscribe(order = PostOrder.FIRST)
+    public void onServerConnected(ServerConnectedEvent event) {
+        snap.updatePlayerServer(event.getPlayer(), event.getServer());
+    }
+
+    @Subscribe(order = PostOrder.LAST)
+    public void onServerPostConnect(ServerPostConnectEvent event) {
+        SnapPlayer snapPlayer = snap.getPlayers().get(event.getPlayer().getUniqueId());
+        if (snapPlayer != null) {
+            // The switch is done, connections to previous servers are closed now
+            event.getPlayer().getCurrentServer().ifPresent(s -> snapPlayer.retireServers(s.getServer()));
         }
     }
 
@@ -69,6 +115,16 @@ public class SnapListener {
         snap.invalidate(event.getPlayer());
     }
 
+    @Subscribe
+    public void onServerRegistered(ServerRegisteredEvent event) {
+        snap.getBungeeAdapter().getProxy().serversChanged();
+    }
+
+    @Subscribe
+    public void onServerUnregistered(ServerUnregisteredEvent event) {
+        snap.getBungeeAdapter().getProxy().serversChanged();
+    }
+
     @Subscribe
     public void onShutdown(ProxyShutdownEvent event) {
         snap.getBungeeAdapter().disablePlugins();
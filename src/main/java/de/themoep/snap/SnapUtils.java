@@ -18,6 +18,7 @@ package de.themoep.snap;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.messages.ChannelIdentifier;
 import com.velocitypowered.api.proxy.messages.LegacyChannelIdentifier;
@@ -36,12 +37,20 @@ import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.ComponentBuilder;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.api.scheduler.ScheduledTask;
+import net.md_5.bungee.event.EventPriority;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class SnapUtils {
 
+    /**
+     * Lookup tables of enum conversions by source and target enum class, indexed by the ordinal of the source constant
+     */
+    private static final Map<Class<?>, Map<Class<?>, Enum<?>[]>> ENUM_TABLES = new ConcurrentHashMap<>();
+
     public static ChannelIdentifier createChannelIdentifier(String channel) {
         if (channel.contains(":")) {
             String[] split = channel.split(":", 2);
@@ -50,12 +59,50 @@ public class SnapUtils {
         return new LegacyChannelIdentifier(channel);
     }
 
+    /**
+     * Convert an enum constant to the constant with the same name of another enum
+     * @param source    The constant to convert
+     * @param def       The constant to return if the other enum has no constant with that name
+     * @return The converted constant or the default
+     */
     public static <T extends Enum, S extends Enum> T convertEnum(S source, T def) {
-        try {
-            return (T) Enum.valueOf(def.getClass(), source.name());
-        } catch (IllegalArgumentException e) {
-            return def;
+        Enum<?>[] table = ENUM_TABLES
+                .computeIfAbsent(source.getDeclaringClass(), c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(def.getDeclaringClass(), c -> createEnumTable(source.getDeclaringClass(), c));
+        Enum<?> converted = table[source.ordinal()];
+        return converted != null ? (T) converted : def;
+    }
+
+    private static Enum<?>[] createEnumTable(Class<? extends Enum> sourceClass, Class<?> targetClass) {
+        Enum<?>[] sources = sourceClass.getEnumConstants();
+        Enum<?>[] table = new Enum<?>[sources.length];
+        for (Enum<?> target : (Enum<?>[]) targetClass.getEnumConstants()) {
+            for (Enum<?> source : sources) {
+                if (source.name().equals(target.name())) {
+                    table[source.ordinal()] = target;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Convert a Bungee event priority to the Velocity post order band it gets called in.
+     * Priorities are mapped to the nearest of Bungee's named priorities, LOWEST being called FIRST.
+     * @param priority  The Bungee priority
+     * @return The Velocity post order
+     */
+    public static PostOrder convertPriority(byte priority) {
+        if (priority <= (EventPriority.LOWEST + EventPriority.LOW) / 2) {
+            return PostOrder.FIRST;
+        } else if (priority <= (EventPriority.LOW + EventPriority.NORMAL) / 2) {
+            return PostOrder.EARLY;
+        } else if (priority < (EventPriority.NORMAL + EventPriority.HIGH) / 2) {
+            return PostOrder.NORMAL;
+        } else if (priority < (EventPriority.HIGH + EventPriority.HIGHEST) / 2) {
+            return PostOrder.LATE;
         }
+        return PostOrder.LAST;
     }
 
     public static Channel getPlayerChannel(Player player) {
@@ -0,0 +1,121 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.Snap;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quarantines Bungee handlers which repeatedly throw exceptions or take longer than their time budget.
+ * Quarantined handlers get skipped until their back-off expired, after which exactly one call probes whether
+ * they work again while all others keep skipping them. Each time a handler gets quarantined again in a row its
+ * back-off doubles. This only applies to the handlers of plugins which opted in as skipping e.g. a ban or
+ * permission handler would silently bypass it.
+ */
+public class CircuitBreaker {
+    private final Snap snap;
+    private final Set<String> plugins;
+    private final int maxFailures;
+    private final long budgetNanos;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+
+    /**
+     * Create a new circuit breaker
+     * @param snap          The Snap instance
+     * @param plugins       The plugins whose handlers may be quarantined, "*" for all
+     * @param maxFailures   How many calls in a row may fail before the handler gets quarantined
+     * @param budget        How many milliseconds a call may take before it counts as failed
+     * @param backoff       For how many milliseconds a handler gets quarantined the first time
+     * @param maxBackoff    The maximum amount of milliseconds a handler gets quarantined for
+     */
+    public CircuitBreaker(Snap snap, Set<String> plugins, int maxFailures, long budget, long backoff, long maxBackoff) {
+        this.snap = snap;
+        this.plugins = plugins;
+        this.maxFailures = Math.max(1, maxFailures);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budget);
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoff);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoff);
+    }
+
+    /**
+     * Check whether a handler may be called
+     * @param handler   The handler
+     * @param now       The current nano time
+     * @return Whether it is not quarantined
+     */
+    boolean allows(HandlerMethod handler, long now) {
+        if (!handler.isTripped() || !covers(handler)) {
+            return true;
+        }
+        if (handler.isQuarantined(now)) {
+            return false;
+        }
+        // Back-off expired, let a single call through to check whether the handler works again
+        return handler.tryProbe();
+    }
+
+    /**
+     * Check whether the circuit breaker applies to a handler
+     * @param handler   The handler
+     * @return Whether its plugin opted in to getting quarantined
+     */
+    private boolean covers(HandlerMethod handler) {
+        return plugins.contains("*") || plugins.contains(handler.getPluginName());
+    }
+
+    /**
+     * Record the outcome of a handler call
+     * @param handler   The handler
+     * @param nanos     How long the call took
+     * @param failed    Whether it threw an exception
+     */
+    void record(HandlerMethod handler, long nanos, boolean failed) {
+        if (failed) {
+            handler.recordException();
+        }
+        if (!covers(handler)) {
+            return;
+        }
+        if (!failed && nanos <= budgetNanos) {
+            if (handler.isTripped()) {
+                handler.release();
+            }
+            handler.recordSuccess();
+            return;
+        }
+        int failures = handler.recordFailure();
+        // A handler that was just released from quarantine gets quarantined again directly
+        if (failures >= maxFailures || handler.getTrips() > 0) {
+            int trips = handler.getTrips();
+            long backoff = Math.min(maxBackoffNanos, backoffNanos << Math.min(trips, 30));
+            handler.quarantine(System.nanoTime() + backoff);
+            snap.getLogger().warn("Quarantining handler " + handler + " of plugin " + handler.getPluginName() + " for "
+                    + TimeUnit.NANOSECONDS.toSeconds(backoff) + "s as it " + (failed ? "threw an exception" : "took "
+                    + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms") + " (" + failures + " failed calls in a row)");
+        }
+    }
+
+    public boolean isEnabled() {
+        return !plugins.isEmpty();
+    }
+}
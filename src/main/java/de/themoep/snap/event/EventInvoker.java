@@ -0,0 +1,34 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Directly invokes a Bungee event handler method without going through reflection
+ */
+@FunctionalInterface
+public interface EventInvoker {
+
+    /**
+     * Invoke the handler
+     * @param listener  The listener instance the handler belongs to
+     * @param event     The event to pass to the handler
+     * @throws Throwable Anything the handler throws
+     */
+    void invoke(Object listener, Object event) throws Throwable;
+}
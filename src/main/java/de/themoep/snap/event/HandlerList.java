@@ -0,0 +1,156 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.velocitypowered.api.event.PostOrder;
+import de.themoep.snap.SnapUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, baked list of all handlers of one event class. Handlers are sorted by their priority
+ * and additionally split into the Velocity post order bands that they get called in.
+ */
+public class HandlerList {
+    private static final HandlerMethod[] EMPTY = new HandlerMethod[0];
+
+    private final HandlerMethod[] handlers;
+    private final HandlerMethod[] observers;
+    private final PostOrder observerBand;
+    private final Map<PostOrder, HandlerMethod[]> bands = new EnumMap<>(PostOrder.class);
+    private final Set<PostOrder> skipCancelled = EnumSet.noneOf(PostOrder.class);
+    private final Map<PostOrder, Double> sampleRates = new EnumMap<>(PostOrder.class);
+
+    /**
+     * Bake the handler list
+     * @param handlers          The handlers, already sorted by priority
+     * @param ignoresCancelled  Which handlers ignore cancelled events
+     * @param observers         Which handlers only observe the event and get called after all others
+     */
+    HandlerList(List<HandlerMethod> handlers, Set<HandlerMethod> ignoresCancelled, Set<HandlerMethod> observers) {
+        List<HandlerMethod> mutating = new ArrayList<>();
+        List<HandlerMethod> observing = new ArrayList<>();
+        for (HandlerMethod handler : handlers) {
+            (observers.contains(handler) ? observing : mutating).add(handler);
+        }
+        this.handlers = mutating.toArray(EMPTY);
+        this.observers = observing.toArray(EMPTY);
+        Map<PostOrder, List<HandlerMethod>> lists = new EnumMap<>(PostOrder.class);
+        Set<PostOrder> receiveCancelled = EnumSet.noneOf(PostOrder.class);
+        for (HandlerMethod handler : mutating) {
+            PostOrder band = SnapUtils.convertPriority(handler.getPriority());
+            lists.computeIfAbsent(band, b -> new ArrayList<>()).add(handler);
+            sampleRates.merge(band, handler.getSampleRate(), Math::max);
+            if (!ignoresCancelled.contains(handler)) {
+                receiveCancelled.add(band);
+            }
+        }
+        for (Map.Entry<PostOrder, List<HandlerMethod>> entry : lists.entrySet()) {
+            bands.put(entry.getKey(), entry.getValue().toArray(EMPTY));
+            if (!receiveCancelled.contains(entry.getKey())) {
+                skipCancelled.add(entry.getKey());
+            }
+        }
+        PostOrder lastBand = PostOrder.LAST;
+        for (PostOrder band : bands.keySet()) {
+            lastBand = band;
+        }
+        observerBand = this.observers.length > 0 ? lastBand : null;
+        if (observerBand != null) {
+            // Observers get called from the last band so it always needs to be forwarded
+            sampleRates.put(observerBand, 1.0);
+        }
+    }
+
+    /**
+     * Get all handlers which don't only observe the event
+     * @return The handlers sorted by priority
+     */
+    public HandlerMethod[] getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the handlers of a specific band
+     * @param band  The post order band or null for all handlers
+     * @return The handlers in that band sorted by priority
+     */
+    public HandlerMethod[] getHandlers(PostOrder band) {
+        if (band == null) {
+            return handlers;
+        }
+        return bands.getOrDefault(band, EMPTY);
+    }
+
+    /**
+     * Get the bands which need to be forwarded
+     * @return The post order bands which contain handlers or after which the observers get called
+     */
+    public Collection<PostOrder> getBands() {
+        if (observerBand != null && !bands.containsKey(observerBand)) {
+            Set<PostOrder> withObservers = EnumSet.copyOf(bands.keySet());
+            withObservers.add(observerBand);
+            return withObservers;
+        }
+        return bands.keySet();
+    }
+
+    /**
+     * Get the handlers which only observe the event
+     * @return The observing handlers sorted by priority
+     */
+    public HandlerMethod[] getObservers() {
+        return observers;
+    }
+
+    /**
+     * Get the band after which the observers get called
+     * @return The last band with handlers, {@link PostOrder#LAST} if there are none or null if there are no observers
+     */
+    public PostOrder getObserverBand() {
+        return observerBand;
+    }
+
+    /**
+     * Check whether a band only contains handlers which ignore cancelled events
+     * @param band  The post order band
+     * @return Whether the band can be skipped for cancelled events
+     */
+    public boolean shouldSkipCancelled(PostOrder band) {
+        return skipCancelled.contains(band);
+    }
+
+    /**
+     * Get the share of events that a band needs to be forwarded for
+     * @param band  The post order band or null for all handlers
+     * @return The highest sample rate of the handlers in the band, 1 if at least one of them needs every event
+     */
+    public double getSampleRate(PostOrder band) {
+        if (band == null) {
+            return 1;
+        }
+        return sampleRates.getOrDefault(band, 1.0);
+    }
+}
@@ -0,0 +1,289 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.md_5.bungee.api.plugin.Plugin;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single Bungee event handler method together with a method handle based invoker to call it
+ */
+public class HandlerMethod {
+    private final Object listener;
+    private final Method method;
+    private final byte priority;
+    private final Plugin plugin;
+    private final EventInvoker invoker;
+
+    private final LongAdder slowCalls = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder exceptions = new LongAdder();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int trips = 0;
+    private volatile long quarantinedUntil = 0;
+    private volatile boolean quarantined = false;
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private volatile double sampleRate = 1;
+
+    HandlerMethod(Object listener, Method method, byte priority, Plugin plugin, Logger logger) {
+        this.listener = listener;
+        this.method = method;
+        this.priority = priority;
+        this.plugin = plugin;
+        this.invoker = createInvoker(method, logger);
+    }
+
+    public Object getListener() {
+        return listener;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public byte getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the plugin this handler belongs to
+     * @return The plugin or null if it couldn't be determined
+     */
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Get the name of the plugin this handler belongs to
+     * @return The plugin name or "unknown" if it couldn't be determined
+     */
+    public String getPluginName() {
+        return plugin != null ? plugin.getDescription().getName() : "unknown";
+    }
+
+    /**
+     * Call this handler with an event
+     * @param event The event
+     * @throws Throwable Anything the handler throws
+     */
+    public void invoke(Object event) throws Throwable {
+        invoker.invoke(listener, event);
+    }
+
+    /**
+     * Get the share of events that this handler gets called with
+     * @return The sample rate between 0 and 1, 1 if it gets called with every event
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Record a call of this handler that took longer than the watchdog threshold
+     * @param nanos How long the call took
+     */
+    void recordSlowCall(long nanos) {
+        slowCalls.increment();
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Check whether this handler should get reported again and remember the report time if so
+     * @param now       The current nano time
+     * @param interval  The minimum nanos between two reports
+     * @return Whether it should get reported
+     */
+    boolean shouldReport(long now, long interval) {
+        long last = lastReport.get();
+        return (last == Long.MIN_VALUE || now - last >= interval) && lastReport.compareAndSet(last, now);
+    }
+
+    /**
+     * Get how often this handler took longer than the watchdog threshold
+     * @return The amount of slow calls
+     */
+    public long getSlowCalls() {
+        return slowCalls.sum();
+    }
+
+    /**
+     * Get the longest time a slow call of this handler took
+     * @return The time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    void recordException() {
+        exceptions.increment();
+    }
+
+    void recordSuccess() {
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+        if (trips != 0) {
+            trips = 0;
+        }
+    }
+
+    int recordFailure() {
+        return failures.incrementAndGet();
+    }
+
+    /**
+     * Quarantine this handler
+     * @param until The nano time until which it should be skipped
+     */
+    void quarantine(long until) {
+        quarantinedUntil = until;
+        quarantined = true;
+        trips++;
+        failures.set(0);
+        probing.set(false);
+    }
+
+    /**
+     * Check whether this handler got quarantined and hasn't proven to work again yet
+     * @return Whether it was quarantined, even if the back-off already expired
+     */
+    boolean isTripped() {
+        return quarantined;
+    }
+
+    /**
+     * Try to become the single call which probes whether a handler works again after its back-off expired
+     * @return Whether this caller may call the handler, false if another call is already probing it
+     */
+    boolean tryProbe() {
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Release this handler from quarantine after a successful probe
+     */
+    void release() {
+        quarantined = false;
+        probing.set(false);
+    }
+
+    /**
+     * Check whether this handler is quarantined
+     * @param now   The current nano time
+     * @return Whether it should be skipped
+     */
+    boolean isQuarantined(long now) {
+        return quarantined && now - quarantinedUntil < 0;
+    }
+
+    /**
+     * Check whether this handler is currently quarantined
+     * @return Whether it gets skipped
+     */
+    public boolean isQuarantined() {
+        return isQuarantined(System.nanoTime());
+    }
+
+    /**
+     * Get the remaining time of the quarantine
+     * @return The remaining nanoseconds or 0 if not quarantined
+     */
+    public long getQuarantineRemaining() {
+        return isQuarantined() ? quarantinedUntil - System.nanoTime() : 0;
+    }
+
+    /**
+     * Get how often this handler got quarantined in a row
+     * @return The amount of times
+     */
+    public int getTrips() {
+        return trips;
+    }
+
+    /**
+     * Get how many exceptions this handler threw
+     * @return The amount of exceptions
+     */
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    /**
+     * Release this handler from quarantine and reset its back-off
+     */
+    public void resetQuarantine() {
+        quarantined = false;
+        probing.set(false);
+        trips = 0;
+        failures.set(0);
+    }
+
+    /**
+     * Create an invoker which calls the method through a method handle adapted to (Object, Object)void so that
+     * it can be called with invokeExact. Plugin classes live in a different unnamed module than Snap so
+     * generating a class in their lookup through the LambdaMetafactory isn't possible, a plain handle works
+     * with every class loader though. Falls back to reflection if the handle can't be created.
+     * @param method    The handler method
+     * @param logger    The logger to report a fallback to
+     * @return The invoker
+     */
+    private static EventInvoker createInvoker(Method method, Logger logger) {
+        method.setAccessible(true);
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            MethodHandle invoker = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (listener, event) -> invoker.invokeExact(listener, event);
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.warn("Unable to create a method handle for " + method + ", calling it through reflection instead", e);
+        }
+        return (listener, event) -> {
+            try {
+                method.invoke(listener, event);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return method.getDeclaringClass().getName() + "#" + method.getName() + "(" + method.getParameterTypes()[0].getSimpleName() + ")";
+    }
+}
@@ -0,0 +1,188 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.themoep.snap.Snap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Watches the Bungee handlers that are currently running and logs the stack of handlers
+ * which take longer than the configured threshold while they are still running.
+ * Every thread gets a single reused invocation slot so that dispatching an event doesn't allocate anything.
+ */
+public class HandlerWatchdog {
+    private final Snap snap;
+    private final long thresholdNanos;
+    private final long reportIntervalNanos;
+    // Weak so that the slots of threads which died don't stick around, the slots must not reference their thread
+    private final Map<Thread, Invocation> running = new MapMaker().weakKeys().makeMap();
+    private final ThreadLocal<Invocation> invocations = ThreadLocal.withInitial(this::createInvocation);
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Create a new watchdog
+     * @param snap              The Snap instance
+     * @param thresholdMillis   How long a handler may take before it gets reported, 0 to disable the watchdog
+     * @param reportInterval    How many milliseconds to wait before reporting the same handler again
+     */
+    public HandlerWatchdog(Snap snap, long thresholdMillis, long reportInterval) {
+        this.snap = snap;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportInterval);
+        if (thresholdMillis > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Snap Watchdog").setDaemon(true).build());
+            long period = Math.max(10, thresholdMillis / 2);
+            executor.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Whether handlers get watched at all
+     * @return Whether the threshold is above 0
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Get the invocation slot of the current thread. Its state has to be restored with
+     * {@link Invocation#restore(Object, HandlerMethod, long, boolean)} once the dispatch is done as it might be nested.
+     * @return The invocation to update with the currently called handler
+     */
+    Invocation current() {
+        return invocations.get();
+    }
+
+    private Invocation createInvocation() {
+        Invocation invocation = new Invocation();
+        running.put(Thread.currentThread(), invocation);
+        return invocation;
+    }
+
+    /**
+     * Record how long a handler took after it was called
+     * @param handler   The handler
+     * @param event     The event
+     * @param nanos     The time it took
+     */
+    void record(HandlerMethod handler, Object event, long nanos) {
+        if (isEnabled() && nanos > thresholdNanos) {
+            handler.recordSlowCall(nanos);
+            if (handler.shouldReport(System.nanoTime(), reportIntervalNanos)) {
+                snap.getLogger().warn("Handler " + handler + " of plugin " + handler.getPluginName() + " took "
+                        + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms to process " + event.getClass().getSimpleName() + "!");
+            }
+        }
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Map.Entry<Thread, Invocation> entry : running.entrySet()) {
+            Thread thread = entry.getKey();
+            Invocation invocation = entry.getValue();
+            HandlerMethod handler = invocation.handler;
+            long start = invocation.start;
+            Object event = invocation.event;
+            if (handler == null || event == null || invocation.sampled || now - start < thresholdNanos) {
+                continue;
+            }
+            invocation.sampled = true;
+            if (handler.shouldReport(now, reportIntervalNanos)) {
+                String stack = Arrays.stream(thread.getStackTrace())
+                        .map(e -> "\tat " + e)
+                        .collect(Collectors.joining("\n"));
+                snap.getLogger().warn("Handler " + handler + " of plugin " + handler.getPluginName() + " is blocking "
+                        + thread.getName() + " for " + TimeUnit.NANOSECONDS.toMillis(now - start) + "ms while processing "
+                        + event.getClass().getSimpleName() + "! Current stack:\n" + stack);
+            }
+        }
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    static class Invocation {
+        private volatile Object event;
+        private volatile HandlerMethod handler;
+        private volatile long start;
+        private volatile boolean sampled;
+
+        /**
+         * Set the handler which is getting called now
+         * @param event     The event that it gets called with
+         * @param handler   The handler
+         * @param start     The nano time at which it was started
+         */
+        void begin(Object event, HandlerMethod handler, long start) {
+            this.start = start;
+            this.sampled = false;
+            this.event = event;
+            this.handler = handler;
+        }
+
+        /**
+         * Restore the state from before a dispatch
+         * @param event     The event of the outer dispatch or null if there was none
+         * @param handler   The handler of the outer dispatch or null if there was none
+         * @param start     The nano time at which that handler was started
+         * @param sampled   Whether that handler already got reported
+         */
+        void restore(Object event, HandlerMethod handler, long start, boolean sampled) {
+            this.handler = null;
+            this.start = start;
+            this.sampled = sampled;
+            this.event = event;
+            this.handler = handler;
+        }
+
+        Object getEvent() {
+            return event;
+        }
+
+        HandlerMethod getHandler() {
+            return handler;
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        boolean isSampled() {
+            return sampled;
+        }
+    }
+}
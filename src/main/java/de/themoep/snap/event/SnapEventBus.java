@@ -0,0 +1,386 @@
+package de.themoep.snap.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.velocitypowered.api.event.PostOrder;
+import de.themoep.snap.Snap;
+import de.themoep.snap.SnapUtils;
+import net.md_5.bungee.api.Callback;
+import net.md_5.bungee.api.event.AsyncEvent;
+import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.api.plugin.PluginManager;
+import net.md_5.bungee.event.EventBus;
+import net.md_5.bungee.event.EventHandler;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Replacement for Bungee's {@link EventBus} which calls handlers through method handles instead of reflection.
+ * Registration is copy-on-write: the handlers of an event class get baked into an immutable {@link HandlerList}
+ * whenever they change so posting an event only needs a single map lookup and never takes a lock.
+ * Handlers can be configured to only get called with a sample of the events of a type, see {@link #sample(Class, PostOrder)}.
+ */
+public class SnapEventBus extends EventBus {
+    private static Field doneField;
+
+    private final Snap snap;
+    private final PluginManager pluginManager;
+    private final Executor observerExecutor;
+    private final Consumer<Class<?>> changeListener;
+    private final Set<String> ignoreCancelledPlugins;
+    private final Set<String> observingPlugins;
+    private final Set<PostOrder> observingBands = EnumSet.noneOf(PostOrder.class);
+
+    private final Map<Class<?>, List<HandlerMethod>> byEvent = new HashMap<>();
+    private final Map<Class<?>, HandlerList> baked = new ConcurrentHashMap<>();
+    private final HandlerWatchdog watchdog;
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Create a new event bus
+     * @param snap              The Snap instance
+     * @param pluginManager     The plugin manager that the listeners get registered with
+     * @param observerExecutor  The executor that observing handlers get called on
+     * @param changeListener    Gets called with the event class whenever the handlers of an event changed
+     */
+    public SnapEventBus(Snap snap, PluginManager pluginManager, Executor observerExecutor, Consumer<Class<?>> changeListener) {
+        this.snap = snap;
+        this.pluginManager = pluginManager;
+        this.observerExecutor = observerExecutor;
+        this.changeListener = changeListener;
+        ignoreCancelledPlugins = new HashSet<>(snap.getConfig().getStringList("ignore-cancelled"));
+        watchdog = new HandlerWatchdog(snap,
+                snap.getConfig().getInt("watchdog.threshold", 50),
+                snap.getConfig().getInt("watchdog.report-interval", 60000));
+        circuitBreaker = new CircuitBreaker(snap,
+                new HashSet<>(snap.getConfig().getStringList("circuit-breaker.plugins")),
+                snap.getConfig().getInt("circuit-breaker.failures", 5),
+                snap.getConfig().getInt("circuit-breaker.budget", 1000),
+                snap.getConfig().getInt("circuit-breaker.backoff", 30000),
+                snap.getConfig().getInt("circuit-breaker.max-backoff", 600000));
+        observingPlugins = new HashSet<>(snap.getConfig().getStringList("observe-only.plugins"));
+        for (String band : snap.getConfig().getStringList("observe-only.bands")) {
+            try {
+                observingBands.add(PostOrder.valueOf(band.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                snap.getLogger().warn("Unknown post order " + band + " in observe-only.bands");
+            }
+        }
+    }
+
+    @Override
+    public void post(Object event) {
+        post(event, null);
+        HandlerList handlerList = baked.get(getEventClass(event));
+        if (handlerList == null || handlerList.getObservers().length == 0) {
+            return;
+        }
+        if (event instanceof AsyncEvent<?> asyncEvent) {
+            // Observers may only see the event once all intents completed
+            postObserversOnCompletion(asyncEvent);
+        } else {
+            observerExecutor.execute(() -> postObservers(event));
+        }
+    }
+
+    /**
+     * Post the observers of an async event on the observer executor once its callback got called
+     * @param event The async event, must not have been fired yet
+     */
+    private void postObserversOnCompletion(AsyncEvent<?> event) {
+        try {
+            if (doneField == null) {
+                Field field = AsyncEvent.class.getDeclaredField("done");
+                field.setAccessible(true);
+                doneField = field;
+            }
+            Callback<Object> done = (Callback<Object>) doneField.get(event);
+            doneField.set(event, (Callback<Object>) (result, error) -> {
+                try {
+                    if (done != null) {
+                        done.done(result, error);
+                    }
+                } finally {
+                    if (error == null) {
+                        observerExecutor.execute(() -> postObservers(event));
+                    }
+                }
+            });
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            snap.getLogger().warn("Unable to wait for the completion of " + event.getClass().getSimpleName() + ", its observers won't get called", e);
+        }
+    }
+
+    /**
+     * Post an event to the handlers of a specific band. If a band is given then the event is expected to
+     * have been picked by {@link #sample(Class, PostOrder)} for it already.
+     * @param event The event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     */
+    public void post(Object event, PostOrder band) {
+        HandlerList handlerList = baked.get(getEventClass(event));
+        if (handlerList != null) {
+            dispatch(event, handlerList.getHandlers(band), handlerList.getSampleRate(band));
+        }
+    }
+
+    /**
+     * Decide whether an event should be forwarded to a band at all. This allows skipping the creation of
+     * events which none of the sampled handlers in that band would get called with.
+     * @param eventClass    The Bungee event class
+     * @param band          The post order band
+     * @return Whether the event needs to be created and posted to the band
+     */
+    public boolean sample(Class<?> eventClass, PostOrder band) {
+        HandlerList handlerList = baked.get(eventClass);
+        if (handlerList == null) {
+            return true;
+        }
+        double rate = handlerList.getSampleRate(band);
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Post an event to the handlers which only observe it
+     * @param event The event
+     */
+    public void postObservers(Object event) {
+        HandlerList handlerList = baked.get(getEventClass(event));
+        if (handlerList != null) {
+            dispatch(event, handlerList.getObservers(), 1);
+        }
+    }
+
+    /**
+     * Call handlers with an event
+     * @param event     The event
+     * @param handlers  The handlers to call
+     * @param sampled   The share of events that were already picked for these handlers before posting
+     */
+    private void dispatch(Object event, HandlerMethod[] handlers, double sampled) {
+        if (handlers.length == 0) {
+            return;
+        }
+        // Only track the invocation if the watchdog is enabled, the slot gets reused so nothing is allocated here
+        HandlerWatchdog.Invocation invocation = watchdog.isEnabled() ? watchdog.current() : null;
+        Object outerEvent = invocation != null ? invocation.getEvent() : null;
+        HandlerMethod outerHandler = invocation != null ? invocation.getHandler() : null;
+        long outerStart = invocation != null ? invocation.getStart() : 0;
+        boolean outerSampled = invocation != null && invocation.isSampled();
+        try {
+            for (HandlerMethod handler : handlers) {
+                double rate = handler.getSampleRate();
+                if (rate < 1 && ThreadLocalRandom.current().nextDouble() * sampled >= rate) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                if (!circuitBreaker.allows(handler, start)) {
+                    continue;
+                }
+                if (invocation != null) {
+                    invocation.begin(event, handler, start);
+                }
+                boolean failed = false;
+                try {
+                    handler.invoke(event);
+                } catch (Throwable t) {
+                    failed = true;
+                    snap.getLogger().warn("Error dispatching event " + event + " to listener " + handler.getListener() + " of " + handler.getPluginName(), t);
+                }
+                long elapsed = System.nanoTime() - start;
+                watchdog.record(handler, event, elapsed);
+                circuitBreaker.record(handler, elapsed, failed);
+            }
+        } finally {
+            if (invocation != null) {
+                invocation.restore(outerEvent, outerHandler, outerStart, outerSampled);
+            }
+        }
+    }
+
+    /**
+     * Check whether there are observers that need to be called after a band of handlers
+     * @param event The event
+     * @param band  The post order band that was called or null if all handlers were called
+     * @return Whether the observers of the event should be called now
+     */
+    public boolean shouldPostObservers(Object event, PostOrder band) {
+        HandlerList handlerList = baked.get(getEventClass(event));
+        return handlerList != null && handlerList.getObservers().length > 0 && (band == null || band == handlerList.getObserverBand());
+    }
+
+    /**
+     * Get the class that handlers of an event are registered for
+     * @param event The event
+     * @return The class of the event or the Bungee event class that it extends if it is a {@link SnapEvent}
+     */
+    private static Class<?> getEventClass(Object event) {
+        return event instanceof SnapEvent ? event.getClass().getSuperclass() : event.getClass();
+    }
+
+    /**
+     * Get all registered handlers
+     * @return The handlers of all event classes
+     */
+    public synchronized List<HandlerMethod> getAllHandlers() {
+        List<HandlerMethod> handlers = new ArrayList<>();
+        byEvent.values().forEach(handlers::addAll);
+        return handlers;
+    }
+
+    public HandlerWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Get the baked handlers of an event class
+     * @param eventClass    The event class
+     * @return The handlers or null if there are none
+     */
+    public HandlerList getHandlers(Class<?> eventClass) {
+        return baked.get(eventClass);
+    }
+
+    /**
+     * Check whether an event class has any handlers
+     * @param eventClass    The event class
+     * @return Whether there is at least one handler registered
+     */
+    public boolean hasHandlers(Class<?> eventClass) {
+        return baked.containsKey(eventClass);
+    }
+
+    @Override
+    public void register(Object listener) {
+        Plugin plugin = getPlugin(listener);
+        Set<Class<?>> changed = new LinkedHashSet<>();
+        synchronized (this) {
+            for (Method method : listener.getClass().getDeclaredMethods()) {
+                EventHandler annotation = method.getAnnotation(EventHandler.class);
+                if (annotation == null) {
+                    continue;
+                }
+                Class<?>[] params = method.getParameterTypes();
+                if (params.length != 1) {
+                    snap.getLogger().info("Method " + method + " in class " + listener.getClass() + " annotated with " + annotation + " does not have single argument");
+                    continue;
+                }
+                HandlerMethod handler = new HandlerMethod(listener, method, annotation.priority(), plugin, snap.getLogger());
+                handler.setSampleRate(getSampleRate(params[0], handler.getPluginName()));
+                byEvent.computeIfAbsent(params[0], c -> new ArrayList<>()).add(handler);
+                changed.add(params[0]);
+            }
+            for (Class<?> eventClass : changed) {
+                bake(eventClass);
+            }
+        }
+        changed.forEach(changeListener);
+    }
+
+    @Override
+    public void unregister(Object listener) {
+        Set<Class<?>> changed = new LinkedHashSet<>();
+        synchronized (this) {
+            for (Map.Entry<Class<?>, List<HandlerMethod>> entry : byEvent.entrySet()) {
+                if (entry.getValue().removeIf(h -> h.getListener() == listener)) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (Class<?> eventClass : changed) {
+                bake(eventClass);
+            }
+        }
+        changed.forEach(changeListener);
+    }
+
+    /**
+     * Get the configured sample rate of a plugin's handlers for an event class
+     * @param eventClass    The event class
+     * @param pluginName    The name of the plugin
+     * @return The share of events between 0 and 1 that the handlers should get called with
+     */
+    private double getSampleRate(Class<?> eventClass, String pluginName) {
+        double rate = snap.getConfig().getDouble("sampling." + eventClass.getSimpleName() + "." + pluginName, 1);
+        if (rate < 0 || rate > 1) {
+            snap.getLogger().warn("Sample rate " + rate + " of " + pluginName + " for " + eventClass.getSimpleName() + " is not between 0 and 1");
+            return Math.max(0, Math.min(1, rate));
+        }
+        return rate;
+    }
+
+    /**
+     * Bake the handlers of an event class into a new immutable handler list. Must hold the lock.
+     * @param eventClass    The event class
+     */
+    private void bake(Class<?> eventClass) {
+        List<HandlerMethod> handlers = byEvent.get(eventClass);
+        if (handlers == null || handlers.isEmpty()) {
+            byEvent.remove(eventClass);
+            baked.remove(eventClass);
+            return;
+        }
+        List<HandlerMethod> sorted = new ArrayList<>(handlers);
+        sorted.sort(Comparator.comparingInt(HandlerMethod::getPriority));
+        Set<HandlerMethod> ignoresCancelled = new HashSet<>();
+        Set<HandlerMethod> observers = new HashSet<>();
+        for (HandlerMethod handler : sorted) {
+            if (ignoreCancelledPlugins.contains("*") || ignoreCancelledPlugins.contains(handler.getPluginName())) {
+                ignoresCancelled.add(handler);
+            }
+            if (observingPlugins.contains(handler.getPluginName()) || observingBands.contains(SnapUtils.convertPriority(handler.getPriority()))) {
+                observers.add(handler);
+            }
+        }
+        baked.put(eventClass, new HandlerList(sorted, ignoresCancelled, observers));
+    }
+
+    /**
+     * Get the plugin that a Bungee listener belongs to
+     * @param listener  The listener instance
+     * @return The plugin whose class loader loaded the listener or null if none was found
+     */
+    public Plugin getPlugin(Object listener) {
+        ClassLoader classLoader = listener.getClass().getClassLoader();
+        for (Plugin plugin : pluginManager.getPlugins()) {
+            if (plugin.getClass().getClassLoader() == classLoader) {
+                return plugin;
+            }
+        }
+        return null;
+    }
+}
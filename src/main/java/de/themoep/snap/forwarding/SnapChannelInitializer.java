@@ -0,0 +1,77 @@
+package de.themoep.snap.forwarding;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.Snap;
+import de.themoep.snap.forwarding.listener.ConnectionInitListener;
+import io.github.waterfallmc.waterfall.event.ConnectionInitEvent;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Wraps Velocity's server channel initializer to call the Bungee {@link ConnectionInitEvent}
+ * as soon as a connection got accepted and before any of its packets get decoded
+ */
+@ChannelHandler.Sharable
+public class SnapChannelInitializer extends ChannelInitializer<Channel> {
+    private static final Method INIT_CHANNEL;
+
+    static {
+        try {
+            INIT_CHANNEL = ChannelInitializer.class.getDeclaredMethod("initChannel", Channel.class);
+            INIT_CHANNEL.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Snap snap;
+    private final ChannelInitializer<Channel> original;
+    private final ConnectionInitListener listener;
+
+    public SnapChannelInitializer(Snap snap, ChannelInitializer<Channel> original, ConnectionInitListener listener) {
+        this.snap = snap;
+        this.original = original;
+        this.listener = listener;
+    }
+
+    @Override
+    protected void initChannel(Channel channel) throws Exception {
+        try {
+            INIT_CHANNEL.invoke(original, channel);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        if (snap.getBungeeAdapter().getEventBus().hasHandlers(ConnectionInitEvent.class)) {
+            listener.forwardEarly(channel);
+        }
+    }
+
+    public ChannelInitializer<Channel> getOriginal() {
+        return original;
+    }
+}
@@ -28,10 +28,13 @@ import net.md_5.bungee.api.event.PermissionCheckEvent;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SnapCommandSender implements net.md_5.bungee.api.CommandSender {
     protected final Snap snap;
     private final CommandSource source;
+    private final Map<String, CachedPermission> permissionCache = new ConcurrentHashMap<>();
 
     public SnapCommandSender(Snap snap, CommandSource source) {
         this.snap = snap;
@@ -86,11 +89,37 @@ public class SnapCommandSender implements net.md_5.bungee.api.CommandSender {
 
     @Override
     public boolean hasPermission(String permission) {
+        long ttl = snap.getPermissionCacheTtl();
+        if (ttl <= 0) {
+            return checkPermission(permission);
+        }
+        long now = System.nanoTime();
+        CachedPermission cached = permissionCache.get(permission);
+        if (cached != null && now - cached.expiry < 0) {
+            return cached.value;
+        }
+        boolean value = checkPermission(permission);
+        permissionCache.put(permission, new CachedPermission(value, now + ttl));
+        return value;
+    }
+
+    private boolean checkPermission(String permission) {
+        boolean value = source.hasPermission(permission);
+        if (!snap.getBungeeAdapter().getEventBus().hasHandlers(PermissionCheckEvent.class)) {
+            return value;
+        }
         return snap.getBungeeAdapter().getPluginManager()
-                .callEvent(new PermissionCheckEvent(this, permission, source.hasPermission(permission)))
+                .callEvent(new PermissionCheckEvent(this, permission, value))
                 .hasPermission();
     }
 
+    /**
+     * Clear the cached results of permission checks, e.g. when the permissions of the sender changed
+     */
+    public void invalidatePermissionCache() {
+        permissionCache.clear();
+    }
+
     @Override
     public void setPermission(String permission, boolean value) {
         // TODO: Hook into permissions plugins?
@@ -103,4 +132,14 @@ public class SnapCommandSender implements net.md_5.bungee.api.CommandSender {
         snap.unsupported("Tried to get permissions for " + getName() + " which is not supported!");
         return Collections.emptySet();
     }
+
+    private static class CachedPermission {
+        private final boolean value;
+        private final long expiry;
+
+        private CachedPermission(boolean value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
 }
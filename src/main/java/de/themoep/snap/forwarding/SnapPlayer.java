@@ -19,6 +19,8 @@ package de.themoep.snap.forwarding;
  */
 
 import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.player.PlayerSettings;
+import com.velocitypowered.api.proxy.player.SkinParts;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.util.ModInfo;
 import de.themoep.snap.Snap;
@@ -51,123 +53,26 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class SnapPlayer extends SnapCommandSender implements ProxiedPlayer {
     private final Player player;
-    private final PendingConnection connection;
+    private volatile PendingConnection connection;
     /*
      * The channel wrapper is used for BungeeCord plugin compatibility.
+     * Plugins read it reflectively like on Bungee's UserConnection so it can't be created lazily.
     */
     @SuppressWarnings("all")
     private final ChannelWrapper ch;
     private String displayName;
+    private volatile ClientSettings settings;
+    private volatile ModList modList;
+    private final Map<RegisteredServer, SnapServer> servers = new ConcurrentHashMap<>();
 
     public SnapPlayer(Snap snap, Player player) {
         super(snap, player);
         this.player = player;
-        connection = new PendingConnection() {
-            @Override
-            public String getName() {
-                return SnapPlayer.this.player.getUsername();
-            }
-
-            @Override
-            public int getVersion() {
-                return player.getProtocolVersion().getProtocol();
-            }
-
-            @Override
-            public InetSocketAddress getVirtualHost() {
-                return player.getVirtualHost().orElse(null);
-            }
-
-            @Override
-            public ListenerInfo getListener() {
-                return snap.getBungeeAdapter().getProxy().getListener();
-            }
-
-            @Override
-            public String getUUID() {
-                return getUniqueId().toString();
-            }
-
-            @Override
-            public UUID getUniqueId() {
-                return player.getUniqueId();
-            }
-
-            @Override
-            public void setUniqueId(UUID uuid) {
-                throw new IllegalStateException("Can only set uuid while state is username");
-            }
-
-            @Override
-            public boolean isOnlineMode() {
-                return player.isOnlineMode();
-            }
-
-            @Override
-            public void setOnlineMode(boolean onlineMode) {
-                throw new IllegalStateException("Can only set online mode while state is username");
-            }
-
-            @Override
-            public boolean isLegacy() {
-                return player.getProtocolVersion().isLegacy();
-            }
-
-            @Override
-            public boolean isTransferred() {
-                return snap.isTransferred(player.getUniqueId());
-            }
-
-            @Override
-            public CompletableFuture<byte[]> retrieveCookie(String key) {
-                return snap.retrieveCookie(player, key);
-            }
-
-            @Override
-            public CompletableFuture<byte[]> sendData(String s, byte[] bytes) {
-                snap.unsupported("Not implemented yet");
-                return CompletableFuture.completedFuture(null);
-            }
-
-            @Override
-            public InetSocketAddress getAddress() {
-                return player.getRemoteAddress();
-            }
-
-            @Override
-            public SocketAddress getSocketAddress() {
-                return getAddress();
-            }
-
-            @Override
-            public void disconnect(String reason) {
-                SnapPlayer.this.disconnect(reason);
-            }
-
-            @Override
-            public void disconnect(BaseComponent... reason) {
-                player.disconnect(SnapUtils.convertComponent(reason));
-            }
-
-            @Override
-            public void disconnect(BaseComponent reason) {
-                player.disconnect(SnapUtils.convertComponent(reason));
-            }
-
-            @Override
-            public boolean isConnected() {
-                return player.isActive();
-            }
-
-            @Override
-            public Unsafe unsafe() {
-                return (Unsafe) snap.unsupported("Unsafe is not supported by Snap!");
-            }
-        };
         displayName = player.getUsername();
         ch = new ChannelWrapper(SnapUtils.getPlayerChannel(player));
     }
@@ -296,7 +201,35 @@ public class SnapPlayer extends SnapCommandSender implements ProxiedPlayer {
 
     @Override
     public Server getServer() {
-        return player.getCurrentServer().map(s -> new SnapServer(snap, s)).orElse(null);
+        return player.getCurrentServer().map(s -> getServer(s.getServer())).orElse(null);
+    }
+
+    /**
+     * Get the canonical wrapper of this player's connection to a server. The same instance gets returned
+     * for as long as the player stays connected to that server.
+     * @param server    The server the player is connected or connecting to
+     * @return The server connection wrapper
+     */
+    public SnapServer getServer(RegisteredServer server) {
+        SnapServer snapServer = servers.get(server);
+        if (snapServer == null) {
+            snapServer = servers.computeIfAbsent(server, s -> new SnapServer(snap, player, s));
+        }
+        return snapServer;
+    }
+
+    /**
+     * Retire the connection wrappers of all servers other than the one the player is connected to now
+     * @param current   The current server or null if the player disconnected
+     */
+    public void retireServers(RegisteredServer current) {
+        servers.entrySet().removeIf(e -> {
+            if (e.getKey() != current) {
+                e.getValue().retire();
+                return true;
+            }
+            return false;
+        });
     }
 
     @Override
@@ -311,9 +244,128 @@ public class SnapPlayer extends SnapCommandSender implements ProxiedPlayer {
 
     @Override
     public PendingConnection getPendingConnection() {
+        PendingConnection connection = this.connection;
+        if (connection == null) {
+            synchronized (this) {
+                connection = this.connection;
+                if (connection == null) {
+                    connection = createPendingConnection();
+                    this.connection = connection;
+                }
+            }
+        }
         return connection;
     }
 
+    /**
+     * Create the pending connection of this player, only done once a plugin asks for it as most never do
+     * @return The pending connection
+     */
+    private PendingConnection createPendingConnection() {
+        return new PendingConnection() {
+            @Override
+            public String getName() {
+                return SnapPlayer.this.player.getUsername();
+            }
+
+            @Override
+            public int getVersion() {
+                return player.getProtocolVersion().getProtocol();
+            }
+
+            @Override
+            public InetSocketAddress getVirtualHost() {
+                return player.getVirtualHost().orElse(null);
+            }
+
+            @Override
+            public ListenerInfo getListener() {
+                return snap.getBungeeAdapter().getProxy().getListener();
+            }
+
+            @Override
+            public String getUUID() {
+                return getUniqueId().toString();
+            }
+
+            @Override
+            public UUID getUniqueId() {
+                return player.getUniqueId();
+            }
+
+            @Override
+            public void setUniqueId(UUID uuid) {
+                throw new IllegalStateException("Can only set uuid while state is username");
+            }
+
+            @Override
+            public boolean isOnlineMode() {
+                return player.isOnlineMode();
+            }
+
+            @Override
+            public void setOnlineMode(boolean onlineMode) {
+                throw new IllegalStateException("Can only set online mode while state is username");
+            }
+
+            @Override
+            public boolean isLegacy() {
+                return player.getProtocolVersion().isLegacy();
+            }
+
+            @Override
+            public boolean isTransferred() {
+                return snap.isTransferred(player.getUniqueId());
+            }
+
+            @Override
+            public CompletableFuture<byte[]> retrieveCookie(String key) {
+                return snap.retrieveCookie(player, key);
+            }
+
+            @Override
+            public CompletableFuture<byte[]> sendData(String s, byte[] bytes) {
+                snap.unsupported("Not implemented yet");
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public InetSocketAddress getAddress() {
+                return player.getRemoteAddress();
+            }
+
+            @Override
+            public SocketAddress getSocketAddress() {
+                return getAddress();
+            }
+
+            @Override
+            public void disconnect(String reason) {
+                SnapPlayer.this.disconnect(reason);
+            }
+
+            @Override
+            public void disconnect(BaseComponent... reason) {
+                player.disconnect(SnapUtils.convertComponent(reason));
+            }
+
+            @Override
+            public void disconnect(BaseComponent reason) {
+                player.disconnect(SnapUtils.convertComponent(reason));
+            }
+
+            @Override
+            public boolean isConnected() {
+                return player.isActive();
+            }
+
+            @Override
+            public Unsafe unsafe() {
+                return (Unsafe) snap.unsupported("Unsafe is not supported by Snap!");
+            }
+        };
+    }
+
     @Override
     public void chat(String message) {
         player.spoofChatInput(message);
@@ -343,69 +395,81 @@ public class SnapPlayer extends SnapCommandSender implements ProxiedPlayer {
 
     @Override
     public Locale getLocale() {
-        return player.getPlayerSettings().getLocale();
+        return getSettings().locale();
     }
 
     @Override
     public byte getViewDistance() {
-        return player.getPlayerSettings().getViewDistance();
+        return getSettings().viewDistance();
     }
 
     @Override
     public ChatMode getChatMode() {
-        return SnapUtils.convertEnum(player.getPlayerSettings().getChatMode(), ChatMode.SHOWN);
+        return getSettings().chatMode();
     }
 
     @Override
     public boolean hasChatColors() {
-        return player.getPlayerSettings().hasChatColors();
+        return getSettings().chatColors();
     }
 
     @Override
     public SkinConfiguration getSkinParts() {
-        return new SkinConfiguration() {
-            @Override
-            public boolean hasCape() {
-                return player.getPlayerSettings().getSkinParts().hasCape();
-            }
-
-            @Override
-            public boolean hasJacket() {
-                return player.getPlayerSettings().getSkinParts().hasJacket();
-            }
-
-            @Override
-            public boolean hasLeftSleeve() {
-                return player.getPlayerSettings().getSkinParts().hasLeftSleeve();
-            }
-
-            @Override
-            public boolean hasRightSleeve() {
-                return player.getPlayerSettings().getSkinParts().hasRightSleeve();
-            }
-
-            @Override
-            public boolean hasLeftPants() {
-                return player.getPlayerSettings().getSkinParts().hasLeftPants();
-            }
-
-            @Override
-            public boolean hasRightPants() {
-                return player.getPlayerSettings().getSkinParts().hasRightPants();
-            }
-
-            @Override
-            public boolean hasHat() {
-                return player.getPlayerSettings().getSkinParts().hasHat();
-            }
-        };
+        return getSettings().skinParts();
     }
 
     @Override
     public MainHand getMainHand() {
-        return SnapUtils.convertEnum(player.getPlayerSettings().getMainHand(), MainHand.RIGHT);
+        return getSettings().mainHand();
+    }
+
+    /**
+     * Get the snapshot of the client settings. Velocity replaces the settings object of a player whenever the
+     * client sends new ones so the snapshot only needs to be rebuilt if that object changed.
+     * @return The current client settings
+     */
+    private ClientSettings getSettings() {
+        PlayerSettings source = player.getPlayerSettings();
+        ClientSettings settings = this.settings;
+        if (settings == null || settings.source() != source) {
+            settings = createSettings(source);
+        }
+        return settings;
     }
 
+    /**
+     * Rebuild the snapshot of the client settings, called when the player changed their settings
+     * @param source    The new settings from Velocity
+     */
+    public void refreshSettings(PlayerSettings source) {
+        createSettings(source);
+    }
+
+    private ClientSettings createSettings(PlayerSettings source) {
+        SkinParts parts = source.getSkinParts();
+        ClientSettings settings = new ClientSettings(
+                source,
+                source.getLocale(),
+                source.getViewDistance(),
+                SnapUtils.convertEnum(source.getChatMode(), ChatMode.SHOWN),
+                source.hasChatColors(),
+                new SnapSkinConfiguration(parts.hasCape(), parts.hasJacket(), parts.hasLeftSleeve(), parts.hasRightSleeve(),
+                        parts.hasLeftPants(), parts.hasRightPants(), parts.hasHat()),
+                SnapUtils.convertEnum(source.getMainHand(), MainHand.RIGHT)
+        );
+        this.settings = settings;
+        return settings;
+    }
+
+    /**
+     * Immutable snapshot of the client settings of a player
+     */
+    private record ClientSettings(PlayerSettings source, Locale locale, byte viewDistance, ChatMode chatMode,
+                                  boolean chatColors, SkinConfiguration skinParts, MainHand mainHand) {}
+
+    private record SnapSkinConfiguration(boolean hasCape, boolean hasJacket, boolean hasLeftSleeve, boolean hasRightSleeve,
+                                         boolean hasLeftPants, boolean hasRightPants, boolean hasHat) implements SkinConfiguration {}
+
     @Override
     public void setTabHeader(BaseComponent header, BaseComponent footer) {
         player.getTabList().setHeaderAndFooter(SnapUtils.convertComponent(header), SnapUtils.convertComponent(footer));
@@ -436,13 +500,22 @@ public class SnapPlayer extends SnapCommandSender implements ProxiedPlayer {
 
     @Override
     public Map<String, String> getModList() {
-        if (isForgeUser()) {
-            return player.getModInfo().get().getMods().stream()
-                    .collect(Collectors.toMap(ModInfo.Mod::getId, ModInfo.Mod::getVersion));
+        ModInfo modInfo = player.getModInfo().orElse(null);
+        ModList modList = this.modList;
+        if (modList == null || modList.source() != modInfo) {
+            Map<String, String> mods = Collections.emptyMap();
+            if (modInfo != null && modInfo.getType().equalsIgnoreCase("FML")) {
+                mods = Collections.unmodifiableMap(modInfo.getMods().stream()
+                        .collect(Collectors.toMap(ModInfo.Mod::getId, ModInfo.Mod::getVersion, (a, b) -> b)));
+            }
+            modList = new ModList(modInfo, mods);
+            this.modList = modList;
         }
-        return Collections.emptyMap();
+        return modList.mods();
     }
 
+    private record ModList(ModInfo source, Map<String, String> mods) {}
+
     @Override
     public Scoreboard getScoreboard() {
         // TODO: Support that? How? Velocity doesn't do this.
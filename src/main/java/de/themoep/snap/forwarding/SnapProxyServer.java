@@ -50,12 +50,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Locale;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -65,15 +66,25 @@ public class SnapProxyServer extends ProxyServer {
     private String statsId;
     private Field fIdentifierMap;
     private Set<String> channels = new HashSet<>();
+    private final Set<String> forwardedChannelsConfig;
+    private volatile Set<String> forwardedChannels;
     private final ListenerInfo listener;
     private Collection<ListenerInfo> listeners;
     private Logger logger = Logger.getLogger("Snap");
     private TaskScheduler scheduler;
 
+    private final AtomicLong serversVersion = new AtomicLong();
+    private volatile ServerSnapshot serverSnapshot = new ServerSnapshot(-1, Map.of());
+
     public SnapProxyServer(Snap snap) {
         this.snap = snap;
         com.velocitypowered.api.proxy.config.ProxyConfig config = snap.getProxy().getConfiguration();
 
+        forwardedChannelsConfig = new HashSet<>(snap.getConfig().getStringList("forwarded-channels"));
+        forwardedChannelsConfig.add("BungeeCord");
+        forwardedChannelsConfig.add("bungeecord:main");
+        forwardedChannels = Set.copyOf(forwardedChannelsConfig);
+
         statsId = snap.getConfig().getString("stats-id");
         if (statsId == null) {
             statsId = UUID.randomUUID().toString();
@@ -188,7 +199,7 @@ public class SnapProxyServer extends ProxyServer {
 
     @Override
     public Collection<ProxiedPlayer> getPlayers() {
-        return snap.getPlayers().values().stream().map(p -> (ProxiedPlayer) p).collect(Collectors.toList());
+        return snap.getPlayerSnapshot();
     }
 
     @Override
@@ -203,14 +214,31 @@ public class SnapProxyServer extends ProxyServer {
 
     @Override
     public Map<String, ServerInfo> getServers() {
-        return snap.getProxy().getAllServers().stream().map(snap::getServerInfo).collect(Collectors.toMap(SnapServerInfo::getName, s -> s));
+        ServerSnapshot snapshot = serverSnapshot;
+        long version = serversVersion.get();
+        if (snapshot.version() != version) {
+            snapshot = new ServerSnapshot(version, Collections.unmodifiableMap(snap.getProxy().getAllServers().stream()
+                    .map(snap::getServerInfo)
+                    .collect(Collectors.toMap(SnapServerInfo::getName, s -> s, (a, b) -> a, LinkedHashMap::new))));
+            serverSnapshot = snapshot;
+        }
+        return snapshot.servers();
     }
 
     @Override
     public Map<String, ServerInfo> getServersCopy() {
-        return Collections.unmodifiableMap(getServers());
+        return getServers();
     }
 
+    /**
+     * Mark the cached server map as outdated, gets called whenever a server is (un)registered with Velocity
+     */
+    public void serversChanged() {
+        serversVersion.incrementAndGet();
+    }
+
+    private record ServerSnapshot(long version, Map<String, ServerInfo> servers) {}
+
     @Override
     public ServerInfo getServerInfo(String name) {
         // Bungee returns null if the server name is null instead of throwing an error...
@@ -258,15 +286,38 @@ public class SnapProxyServer extends ProxyServer {
     }
 
     @Override
-    public void registerChannel(String channel) {
-        snap.getProxy().getChannelRegistrar().register(SnapUtils.createChannelIdentifier(channel));
+    public synchronized void registerChannel(String channel) {
+        ChannelIdentifier identifier = SnapUtils.createChannelIdentifier(channel);
+        snap.getProxy().getChannelRegistrar().register(identifier);
         channels.add(channel);
+        updateForwardedChannels();
     }
 
     @Override
-    public void unregisterChannel(String channel) {
+    public synchronized void unregisterChannel(String channel) {
         snap.getProxy().getChannelRegistrar().unregister(SnapUtils.createChannelIdentifier(channel));
         channels.remove(channel);
+        updateForwardedChannels();
+    }
+
+    private void updateForwardedChannels() {
+        Set<String> forwarded = new HashSet<>(forwardedChannelsConfig);
+        for (String channel : channels) {
+            forwarded.add(channel);
+            forwarded.add(SnapUtils.createChannelIdentifier(channel).getId());
+        }
+        forwardedChannels = Set.copyOf(forwarded);
+    }
+
+    /**
+     * Check whether plugin messages on a channel should be forwarded to Bungee plugins.
+     * That is the case for channels registered by Bungee plugins, BungeeCord's own channel and the configured ones.
+     * @param channel   The channel id
+     * @return Whether messages on the channel should be forwarded
+     */
+    public boolean isForwardedChannel(String channel) {
+        Set<String> forwarded = forwardedChannels;
+        return forwarded.contains(channel) || forwarded.contains("*");
     }
 
     @Override
@@ -324,7 +375,8 @@ public class SnapProxyServer extends ProxyServer {
 
     @Override
     public int getOnlineCount() {
-        return snap.getProxy().getPlayerCount();
+        // Use the snapshot so that the count matches getPlayers()
+        return snap.getPlayerSnapshot().size();
     }
 
     @Override
@@ -384,7 +436,7 @@ public class SnapProxyServer extends ProxyServer {
 
             @Override
             public ServerInfo getServerInfo(String name) {
-                return getServers().get(name);
+                return SnapProxyServer.this.getServerInfo(name);
             }
 
             @Override
@@ -399,6 +451,7 @@ public class SnapProxyServer extends ProxyServer {
                     }
                     snap.getProxy().unregisterServer(previous.get().getServerInfo());
                     snap.getServers().remove(previous.get().getServerInfo().getName());
+                    serversChanged();
                 }
 
                 ServerInfo previousInfo = snap.getServerInfo(previous.orElse(null));
@@ -406,6 +459,7 @@ public class SnapProxyServer extends ProxyServer {
                 RegisteredServer rs = snap.getProxy().registerServer(
                         new com.velocitypowered.api.proxy.server.ServerInfo(server.getName(), server.getAddress()));
                 snap.getServerInfo(rs);
+                serversChanged();
                 return previousInfo;
             }
 
@@ -427,7 +481,8 @@ public class SnapProxyServer extends ProxyServer {
             public ServerInfo removeServer(ServerInfo server) {
                 if (server instanceof SnapServerInfo) {
                     snap.getProxy().unregisterServer(((SnapServerInfo) server).getServer().getServerInfo());
-                    getServers().remove(server.getName());
+                    snap.getServers().remove(server.getName());
+                    serversChanged();
                     return server;
                 }
                 return null;
@@ -572,13 +627,7 @@ public class SnapProxyServer extends ProxyServer {
         if (p != null) {
             return Collections.singleton(p);
         }
-        Set<ProxiedPlayer> matched = new HashSet<>();
-        for (SnapPlayer value : snap.getPlayers().values()) {
-            if (value.getName().toLowerCase(Locale.ROOT).startsWith(match.toLowerCase(Locale.ROOT))) {
-                matched.add(value);
-            }
-        }
-        return matched;
+        return Collections.unmodifiableCollection(snap.getPlayerNames().match(match));
     }
 
     @Override
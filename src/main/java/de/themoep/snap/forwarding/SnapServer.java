@@ -35,7 +35,7 @@ public class SnapServer implements Server {
     private final Snap snap;
     private final Player player;
     private final RegisteredServer server;
-    private boolean connected = true;
+    private volatile boolean connected = true;
 
     public SnapServer(Snap snap, ServerConnection serverConnection) {
         this(snap, serverConnection.getPlayer(), serverConnection.getServer());
@@ -47,6 +47,17 @@ public class SnapServer implements Server {
         this.server = server;
     }
 
+    public RegisteredServer getServer() {
+        return server;
+    }
+
+    /**
+     * Mark this connection as closed, called when the player switched away from the server or disconnected
+     */
+    void retire() {
+        connected = false;
+    }
+
     @Override
     public ServerInfo getInfo() {
         return snap.getServerInfo(server);
@@ -18,7 +18,6 @@ package de.themoep.snap.forwarding;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import de.themoep.snap.Snap;
 import de.themoep.snap.SnapUtils;
@@ -30,14 +29,18 @@ import net.md_5.bungee.api.connection.ProxiedPlayer;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SnapServerInfo implements net.md_5.bungee.api.config.ServerInfo {
     private final Snap snap;
 
     private final RegisteredServer server;
 
+    private final Set<ProxiedPlayer> players = ConcurrentHashMap.newKeySet();
+    private final Collection<ProxiedPlayer> playersView = Collections.unmodifiableSet(players);
+
     public SnapServerInfo(Snap snap, RegisteredServer server) {
         this.snap = snap;
         this.server = server;
@@ -64,11 +67,31 @@ public class SnapServerInfo implements net.md_5.bungee.api.config.ServerInfo {
 
     @Override
     public Collection<ProxiedPlayer> getPlayers() {
-        Set<ProxiedPlayer> players = new LinkedHashSet<>();
-        for (Player player : server.getPlayersConnected()) {
-            players.add(snap.getPlayer(player));
-        }
-        return players;
+        return playersView;
+    }
+
+    /**
+     * Get the amount of players connected to this server
+     * @return The player count
+     */
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * Add a player to the players of this server, called when they connected to it
+     * @param player    The player
+     */
+    public void addPlayer(SnapPlayer player) {
+        players.add(player);
+    }
+
+    /**
+     * Remove a player from the players of this server, called when they switched away or disconnected
+     * @param player    The player
+     */
+    public void removePlayer(SnapPlayer player) {
+        players.remove(player);
     }
 
     @Override
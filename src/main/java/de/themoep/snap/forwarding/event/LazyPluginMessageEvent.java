@@ -0,0 +1,47 @@
+package de.themoep.snap.forwarding.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.event.SnapEvent;
+import net.md_5.bungee.api.connection.Connection;
+import net.md_5.bungee.api.event.PluginMessageEvent;
+
+import java.util.function.Supplier;
+
+/**
+ * Plugin message event which only copies the payload from the Velocity event when a handler requests it
+ */
+public class LazyPluginMessageEvent extends PluginMessageEvent implements SnapEvent {
+    private final Supplier<byte[]> dataSupplier;
+    private byte[] data = null;
+
+    public LazyPluginMessageEvent(Connection sender, Connection receiver, String tag, Supplier<byte[]> dataSupplier) {
+        super(sender, receiver, tag, null);
+        this.dataSupplier = dataSupplier;
+    }
+
+    @Override
+    public byte[] getData() {
+        if (data == null) {
+            data = dataSupplier.get();
+        }
+        return data;
+    }
+}
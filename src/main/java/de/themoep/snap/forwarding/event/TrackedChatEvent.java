@@ -0,0 +1,45 @@
+package de.themoep.snap.forwarding.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.event.SnapEvent;
+import net.md_5.bungee.api.connection.Connection;
+import net.md_5.bungee.api.event.ChatEvent;
+
+/**
+ * Chat event which tracks whether a handler changed the message
+ */
+public class TrackedChatEvent extends ChatEvent implements SnapEvent {
+    private boolean messageModified = false;
+
+    public TrackedChatEvent(Connection sender, Connection receiver, String message) {
+        super(sender, receiver, message);
+    }
+
+    @Override
+    public void setMessage(String message) {
+        super.setMessage(message);
+        messageModified = true;
+    }
+
+    public boolean isMessageModified() {
+        return messageModified;
+    }
+}
@@ -0,0 +1,100 @@
+package de.themoep.snap.forwarding.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import io.github.waterfallmc.waterfall.QueryResult;
+
+import java.util.List;
+
+/**
+ * Query result which tracks whether a handler changed any of its values
+ */
+public class TrackedQueryResult extends QueryResult {
+    private boolean modified = false;
+
+    public TrackedQueryResult(String motd, String gameType, String worldName, int onlinePlayers, int maxPlayers, int port, String address, String software, List<String> players, String version) {
+        super(motd, gameType, worldName, onlinePlayers, maxPlayers, port, address, software, players, version);
+    }
+
+    @Override
+    public void setMotd(String motd) {
+        super.setMotd(motd);
+        modified = true;
+    }
+
+    @Override
+    public void setGameType(String gameType) {
+        super.setGameType(gameType);
+        modified = true;
+    }
+
+    @Override
+    public void setWorldName(String worldName) {
+        super.setWorldName(worldName);
+        modified = true;
+    }
+
+    @Override
+    public void setOnlinePlayers(int onlinePlayers) {
+        super.setOnlinePlayers(onlinePlayers);
+        modified = true;
+    }
+
+    @Override
+    public void setMaxPlayers(int maxPlayers) {
+        super.setMaxPlayers(maxPlayers);
+        modified = true;
+    }
+
+    @Override
+    public void setPort(int port) {
+        super.setPort(port);
+        modified = true;
+    }
+
+    @Override
+    public void setAddress(String address) {
+        super.setAddress(address);
+        modified = true;
+    }
+
+    @Override
+    public void setPlayers(List<String> players) {
+        super.setPlayers(players);
+        modified = true;
+    }
+
+    @Override
+    public List<String> getPlayers() {
+        // The list is mutable so we have to assume that it got changed
+        modified = true;
+        return super.getPlayers();
+    }
+
+    @Override
+    public void setVersion(String version) {
+        super.setVersion(version);
+        modified = true;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+}
@@ -0,0 +1,70 @@
+package de.themoep.snap.forwarding.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.event.SnapEvent;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.event.ServerKickEvent;
+
+/**
+ * Server kick event which tracks whether a handler changed the kick reason or the server to send the player to
+ */
+public class TrackedServerKickEvent extends ServerKickEvent implements SnapEvent {
+    private boolean reasonModified = false;
+    private boolean cancelServerModified = false;
+
+    public TrackedServerKickEvent(ProxiedPlayer player, ServerInfo kickedFrom, BaseComponent[] kickReasonComponent, ServerInfo cancelServer, State state, Cause cause) {
+        super(player, kickedFrom, kickReasonComponent, cancelServer, state, cause);
+    }
+
+    @Override
+    public void setKickReason(String reason) {
+        super.setKickReason(reason);
+        reasonModified = true;
+    }
+
+    @Override
+    public void setKickReasonComponent(BaseComponent[] kickReasonComponent) {
+        super.setKickReasonComponent(kickReasonComponent);
+        reasonModified = true;
+    }
+
+    @Override
+    public void setReason(BaseComponent reason) {
+        super.setReason(reason);
+        reasonModified = true;
+    }
+
+    @Override
+    public void setCancelServer(ServerInfo cancelServer) {
+        super.setCancelServer(cancelServer);
+        cancelServerModified = true;
+    }
+
+    public boolean isReasonModified() {
+        return reasonModified;
+    }
+
+    public boolean isCancelServerModified() {
+        return cancelServerModified;
+    }
+}
@@ -0,0 +1,151 @@
+package de.themoep.snap.forwarding.event;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import net.md_5.bungee.api.Favicon;
+import net.md_5.bungee.api.ServerPing;
+import net.md_5.bungee.api.chat.BaseComponent;
+
+/**
+ * Server ping which tracks whether a handler changed any of its values.
+ * Getters of mutable values also mark it as modified as we can't know what a handler does with them.
+ */
+public class TrackedServerPing extends ServerPing {
+    private boolean modified = false;
+
+    public TrackedServerPing(ServerPing ping) {
+        super(null, null, ping.getDescriptionComponent(), ping.getFaviconObject());
+        super.setVersion(ping.getVersion() != null ? new TrackedProtocol(ping.getVersion()) : null);
+        super.setPlayers(ping.getPlayers() != null ? new TrackedPlayers(ping.getPlayers()) : null);
+        super.setModinfo(ping.getModinfo());
+    }
+
+    private void modified() {
+        modified = true;
+    }
+
+    @Override
+    public void setVersion(Protocol version) {
+        super.setVersion(version);
+        modified();
+    }
+
+    @Override
+    public void setPlayers(Players players) {
+        super.setPlayers(players);
+        modified();
+    }
+
+    @Override
+    public void setDescription(String description) {
+        super.setDescription(description);
+        modified();
+    }
+
+    @Override
+    public void setDescriptionComponent(BaseComponent description) {
+        super.setDescriptionComponent(description);
+        modified();
+    }
+
+    @Override
+    public BaseComponent getDescriptionComponent() {
+        modified();
+        return super.getDescriptionComponent();
+    }
+
+    @Override
+    public void setFavicon(String favicon) {
+        super.setFavicon(favicon);
+        modified();
+    }
+
+    @Override
+    public void setFavicon(Favicon favicon) {
+        super.setFavicon(favicon);
+        modified();
+    }
+
+    @Override
+    public void setModinfo(ModInfo modinfo) {
+        super.setModinfo(modinfo);
+        modified();
+    }
+
+    @Override
+    public ModInfo getModinfo() {
+        modified();
+        return super.getModinfo();
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    private class TrackedProtocol extends Protocol {
+
+        private TrackedProtocol(Protocol protocol) {
+            super(protocol.getName(), protocol.getProtocol());
+        }
+
+        @Override
+        public void setName(String name) {
+            super.setName(name);
+            modified();
+        }
+
+        @Override
+        public void setProtocol(int protocol) {
+            super.setProtocol(protocol);
+            modified();
+        }
+    }
+
+    private class TrackedPlayers extends Players {
+
+        private TrackedPlayers(Players players) {
+            super(players.getMax(), players.getOnline(), players.getSample());
+        }
+
+        @Override
+        public void setMax(int max) {
+            super.setMax(max);
+            modified();
+        }
+
+        @Override
+        public void setOnline(int online) {
+            super.setOnline(online);
+            modified();
+        }
+
+        @Override
+        public void setSample(PlayerInfo[] sample) {
+            super.setSample(sample);
+            modified();
+        }
+
+        @Override
+        public PlayerInfo[] getSample() {
+            modified();
+            return super.getSample();
+        }
+    }
+}
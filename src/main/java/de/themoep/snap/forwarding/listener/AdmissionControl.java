@@ -0,0 +1,295 @@
+package de.themoep.snap.forwarding.listener;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.proxy.InboundConnection;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import de.themoep.snap.Snap;
+import net.kyori.adventure.text.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Limits how many events get forwarded to the Bungee handlers at the same time.
+ * Events that exceed the limit wait in a bounded queue and get rejected if it is full or they waited too long.
+ * A connection can keep its permit between events so that one login only gets admitted once for all of its events.
+ * Held permits get released as soon as the connection closed or the hold timeout expired, whichever happens first.
+ */
+public class AdmissionControl {
+    private final Snap snap;
+    private final String name;
+    private final int permits;
+    private final int queueSize;
+    private final long queueTimeout;
+    private final long holdTimeout;
+    private final Component rejectMessage;
+
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private int active = 0;
+    private final Map<Object, Hold> held = new ConcurrentHashMap<>();
+    private ScheduledTask sweepTask = null;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Create a new admission control
+     * @param snap          The Snap instance
+     * @param name          The name to use in log messages
+     * @param permits       How many events may be forwarded at the same time
+     * @param queueSize     How many events may wait for a permit
+     * @param queueTimeout  How long in milliseconds an event may wait for a permit, 0 for no limit
+     * @param holdTimeout   How long in milliseconds an open connection may keep its permit until its next event
+     * @param rejectMessage The message that rejected connections get disconnected with
+     */
+    public AdmissionControl(Snap snap, String name, int permits, int queueSize, long queueTimeout, long holdTimeout, Component rejectMessage) {
+        this.snap = snap;
+        this.name = name;
+        this.permits = permits;
+        this.queueSize = queueSize;
+        this.queueTimeout = queueTimeout;
+        this.holdTimeout = holdTimeout;
+        this.rejectMessage = rejectMessage;
+    }
+
+    /**
+     * Wrap an event task so that it only gets executed once a permit is available. If the connection still
+     * holds the permit of its previous event then that one gets used instead of acquiring a new one.
+     * The permit is released when the wrapped task resumes its continuation unless the connection keeps it.
+     * @param connection    The connection that the event belongs to or null if it can't keep its permit
+     * @param task          The task to execute
+     * @param onReject      Called with the rejection message if the event could not be admitted
+     * @param keep          Checked once the task completed, whether the connection keeps the permit for its next event
+     * @return The wrapped event task
+     */
+    public EventTask admit(InboundConnection connection, EventTask task, Consumer<Component> onReject, BooleanSupplier keep) {
+        return EventTask.withContinuation(continuation -> {
+            Waiter waiter = new Waiter(connection, task, continuation, onReject, keep);
+            if (connection != null && held.remove(connection.getRemoteAddress()) != null) {
+                // Already admitted with an earlier event of the same connection
+                execute(waiter);
+                return;
+            }
+            synchronized (this) {
+                if (active < permits) {
+                    active++;
+                } else if (queue.size() < queueSize) {
+                    queue.addLast(waiter);
+                    queued.incrementAndGet();
+                    if (queueTimeout > 0) {
+                        waiter.timeoutTask = snap.getProxy().getScheduler().buildTask(snap, () -> timeout(waiter))
+                                .delay(queueTimeout, TimeUnit.MILLISECONDS).schedule();
+                    }
+                    return;
+                } else {
+                    rejected.incrementAndGet();
+                    waiter = null;
+                }
+            }
+            if (waiter != null) {
+                run(waiter);
+            } else {
+                onReject.accept(rejectMessage);
+                continuation.resume();
+            }
+        });
+    }
+
+    private void timeout(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+            timedOut.incrementAndGet();
+        }
+        snap.getLogger().warn(name + " waited longer than " + queueTimeout + "ms for admission, rejecting it");
+        waiter.onReject.accept(rejectMessage);
+        waiter.continuation.resume();
+    }
+
+    private void run(Waiter waiter) {
+        if (waiter.connection != null && !waiter.connection.isActive()) {
+            // Closed while it was waiting, hand the permit on to the next one
+            release();
+            waiter.continuation.resume();
+            return;
+        }
+        admitted.incrementAndGet();
+        execute(waiter);
+    }
+
+    private void execute(Waiter waiter) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        try {
+            waiter.task.execute(new Continuation() {
+                @Override
+                public void resume() {
+                    if (released.compareAndSet(false, true)) {
+                        if (waiter.connection != null && waiter.keep != null && waiter.keep.getAsBoolean()) {
+                            hold(waiter.connection);
+                        } else {
+                            release();
+                        }
+                    }
+                    waiter.continuation.resume();
+                }
+
+                @Override
+                public void resumeWithException(Throwable exception) {
+                    if (released.compareAndSet(false, true)) {
+                        release();
+                    }
+                    waiter.continuation.resumeWithException(exception);
+                }
+            });
+        } catch (Throwable t) {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+            waiter.continuation.resumeWithException(t);
+        }
+    }
+
+    /**
+     * Keep the permit for the next event of a connection. It gets released if the connection closes
+     * or the next event doesn't arrive within the hold timeout.
+     * @param connection    The connection
+     */
+    private void hold(InboundConnection connection) {
+        if (!connection.isActive()) {
+            release();
+            return;
+        }
+        if (held.put(connection.getRemoteAddress(), new Hold(connection, System.currentTimeMillis() + holdTimeout)) != null) {
+            // Can only happen if the same address got reused while it was still held, don't leak that permit
+            release();
+        }
+        synchronized (this) {
+            if (sweepTask == null) {
+                sweepTask = snap.getProxy().getScheduler().buildTask(snap, this::sweep)
+                        .repeat(Math.min(holdTimeout, 1000), TimeUnit.MILLISECONDS).schedule();
+            }
+        }
+    }
+
+    /**
+     * Release the permit that a connection holds, e.g. because its login got denied after it was admitted
+     * @param connection    The connection
+     */
+    public void releaseHeld(InboundConnection connection) {
+        Hold hold = held.get(connection.getRemoteAddress());
+        if (hold != null && hold.connection == connection && held.remove(connection.getRemoteAddress(), hold)) {
+            release();
+        }
+    }
+
+    /**
+     * Release the permits of closed connections and those that held theirs for too long
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Object, Hold> entry : held.entrySet()) {
+            Hold hold = entry.getValue();
+            if ((!hold.connection.isActive() || now >= hold.expires) && held.remove(entry.getKey(), hold)) {
+                release();
+            }
+        }
+    }
+
+    private void release() {
+        Waiter next;
+        synchronized (this) {
+            next = queue.pollFirst();
+            if (next == null) {
+                active--;
+                return;
+            }
+            // Permit gets handed over directly to the next waiter
+        }
+        if (next.timeoutTask != null) {
+            next.timeoutTask.cancel();
+        }
+        // Don't run the next event on the thread of the one that just completed
+        snap.getProxy().getScheduler().buildTask(snap, () -> run(next)).schedule();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getWaiting() {
+        return queue.size();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    private record Hold(InboundConnection connection, long expires) {}
+
+    private static class Waiter {
+        private final InboundConnection connection;
+        private final EventTask task;
+        private final Continuation continuation;
+        private final Consumer<Component> onReject;
+        private final BooleanSupplier keep;
+        private ScheduledTask timeoutTask;
+
+        private Waiter(InboundConnection connection, EventTask task, Continuation continuation, Consumer<Component> onReject, BooleanSupplier keep) {
+            this.connection = connection;
+            this.task = task;
+            this.continuation = continuation;
+            this.onReject = onReject;
+            this.keep = keep;
+        }
+    }
+}
@@ -18,32 +18,91 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.PlayerChatEvent;
 import de.themoep.snap.Snap;
 import de.themoep.snap.forwarding.SnapPlayer;
+import de.themoep.snap.forwarding.event.TrackedChatEvent;
 import net.md_5.bungee.api.event.ChatEvent;
 
-public class ChatListener extends ForwardingListener {
+import java.util.UUID;
+
+public class ChatListener extends ForwardingListener<PlayerChatEvent> {
 
     public ChatListener(Snap snap) {
-        super(snap, ChatEvent.class);
+        super(snap, PlayerChatEvent.class, ChatEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(PlayerChatEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(PlayerChatEvent event) {
+    @Override
+    public EventTask forward(PlayerChatEvent event, PostOrder band) {
         SnapPlayer player = snap.getPlayer(event.getPlayer());
 
-        ChatEvent e = new ChatEvent(
-                player, player.getServer(),
-                event.getResult().getMessage().orElse(event.getMessage())
-        );
-        e.setCancelled(!event.getResult().isAllowed());
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+        boolean allowed = event.getResult().isAllowed();
+        String message = event.getResult().getMessage().orElse(event.getMessage());
+        TrackedChatEvent e = getSharedEvent(event, band, () -> new TrackedChatEvent(player, player.getServer(), message));
+        if (!e.getMessage().equals(message)) {
+            // A Velocity plugin changed the message between the bands
+            e.setMessage(message);
+        }
+        e.setCancelled(!allowed);
+        callEvent(e, band);
         if (e.isCancelled()) {
-            event.setResult(PlayerChatEvent.ChatResult.denied());
-        } else {
+            if (allowed) {
+                event.setResult(PlayerChatEvent.ChatResult.denied());
+            }
+        } else if (e.isMessageModified()) {
             event.setResult(PlayerChatEvent.ChatResult.message(e.getMessage()));
+        } else if (!allowed) {
+            event.setResult(PlayerChatEvent.ChatResult.allowed());
+        }
+        return null;
+    }
+
+    @Override
+    public Object createSubscriber() {
+        return new Subscriber(this);
+    }
+
+    /**
+     * Subscribes to every post order without requiring async execution so that the event can be forwarded inline
+     */
+    public static class Subscriber {
+        private final ChatListener listener;
+
+        private Subscriber(ChatListener listener) {
+            this.listener = listener;
+        }
+
+        @Subscribe(order = PostOrder.FIRST, async = false)
+        public EventTask first(PlayerChatEvent event) {
+            return listener.subscribed(event, PostOrder.FIRST);
+        }
+
+        @Subscribe(order = PostOrder.EARLY, async = false)
+        public EventTask early(PlayerChatEvent event) {
+            return listener.subscribed(event, PostOrder.EARLY);
+        }
+
+        @Subscribe(order = PostOrder.NORMAL, async = false)
+        public EventTask normal(PlayerChatEvent event) {
+            return listener.subscribed(event, PostOrder.NORMAL);
+        }
+
+        @Subscribe(order = PostOrder.LATE, async = false)
+        public EventTask late(PlayerChatEvent event) {
+            return listener.subscribed(event, PostOrder.LATE);
+        }
+
+        @Subscribe(order = PostOrder.LAST, async = false)
+        public EventTask last(PlayerChatEvent event) {
+            return listener.subscribed(event, PostOrder.LAST);
         }
     }
 }
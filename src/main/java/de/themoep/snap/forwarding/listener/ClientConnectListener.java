@@ -18,28 +18,28 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
-import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import de.themoep.snap.Snap;
 import net.kyori.adventure.text.Component;
 import net.md_5.bungee.api.event.ClientConnectEvent;
 
-public class ClientConnectListener extends ForwardingListener {
+public class ClientConnectListener extends ForwardingListener<PreLoginEvent> {
 
     // TODO: Find better implementation as this has no real Velocity equivalent
     public ClientConnectListener(Snap snap) {
-        super(snap, ClientConnectEvent.class);
+        super(snap, PreLoginEvent.class, ClientConnectEvent.class, PostOrder.FIRST);
     }
 
-    @Subscribe(order = PostOrder.FIRST)
-    public void on(PreLoginEvent event) {
+    @Override
+    public EventTask forward(PreLoginEvent event, PostOrder band) {
         ClientConnectEvent e = new ClientConnectEvent(
                 event.getConnection().getRemoteAddress(),
                 snap.getBungeeAdapter().getProxy().getListener()
         );
         e.setCancelled(!event.getResult().isAllowed());
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+        callEvent(e, band);
         if (e.isCancelled()) {
             boolean originallyAllowed = event.getResult().isAllowed();
             if (originallyAllowed) {
@@ -48,5 +48,6 @@ public class ClientConnectListener extends ForwardingListener {
         } else {
             event.setResult(PreLoginEvent.PreLoginComponentResult.allowed());
         }
+        return null;
     }
 }
@@ -19,39 +19,104 @@ package de.themoep.snap.forwarding.listener;
  */
 
 import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
-import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import de.themoep.snap.Snap;
 import io.github.waterfallmc.waterfall.event.ConnectionInitEvent;
+import io.netty.channel.Channel;
 import net.kyori.adventure.text.Component;
 
-public class ConnectionInitListener extends ForwardingListener {
+import java.util.concurrent.Executor;
 
-    // TODO: Find better implementation as this has no real Velocity equivalent
+public class ConnectionInitListener extends ForwardingListener<PreLoginEvent> {
+
+    // Only used as a fallback if the channel initializer couldn't be hooked as this has no real Velocity equivalent
     public ConnectionInitListener(Snap snap) {
-        super(snap, ConnectionInitEvent.class);
+        super(snap, PreLoginEvent.class, ConnectionInitEvent.class, PostOrder.EARLY);
     }
 
-    @Subscribe(order = PostOrder.EARLY)
-    public void on(PreLoginEvent event, Continuation continuation) {
+    @Override
+    public EventTask forward(PreLoginEvent event, PostOrder band) {
         if (!event.getResult().isAllowed()) {
-            return;
+            return null;
         }
 
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ConnectionInitEvent(
-                event.getConnection().getRemoteAddress(),
-                snap.getBungeeAdapter().getProxy().getListener(),
-                (e, t) -> {
+        return callAsyncEvent(
+                callback -> new ConnectionInitEvent(
+                        event.getConnection().getRemoteAddress(),
+                        snap.getBungeeAdapter().getProxy().getListener(),
+                        callback
+                ),
+                e -> {
                     if (e.isCancelled()) {
                         event.setResult(PreLoginEvent.PreLoginComponentResult.denied(Component.text("ConnectionInitEvent Cancelled")));
                     }
-                    if (t != null) {
-                        continuation.resumeWithException(t);
+                },
+                () -> {
+                    if (shouldDenyOnTimeout()) {
+                        event.setResult(PreLoginEvent.PreLoginComponentResult.denied(snap.getTimeoutMessage()));
+                    }
+                },
+                band
+        );
+    }
+
+    /**
+     * Forward a newly accepted connection before Velocity reads anything from it.
+     * Reading is paused until the Bungee handlers are done and the channel gets closed if they cancelled the event.
+     * This gets called from the channel initializer on a Netty event loop so the handlers always get called on
+     * another thread, otherwise a single blocking handler would stall every connection on that loop.
+     * @param channel   The channel of the connection
+     */
+    public void forwardEarly(Channel channel) {
+        channel.config().setAutoRead(false);
+        Executor executor = snap.getBungeeAdapter().getAsyncEventExecutor();
+        if (executor != null) {
+            // callAsyncEvent already hands the handlers to the async event executor
+            callEarly(channel);
+            return;
+        }
+        try {
+            snap.getProxy().getScheduler().buildTask(snap, () -> callEarly(channel)).schedule();
+        } catch (RuntimeException e) {
+            snap.getLogger().error("Unable to schedule forwarding of ConnectionInitEvent", e);
+            channel.close();
+        }
+    }
+
+    private void callEarly(Channel channel) {
+        EventTask task = callAsyncEvent(
+                callback -> new ConnectionInitEvent(
+                        channel.remoteAddress(),
+                        snap.getBungeeAdapter().getProxy().getListener(),
+                        callback
+                ),
+                e -> {
+                    if (e.isCancelled()) {
+                        channel.close();
+                    } else {
+                        channel.config().setAutoRead(true);
+                    }
+                },
+                () -> {
+                    if (shouldDenyOnTimeout()) {
+                        channel.close();
                     } else {
-                        continuation.resume();
+                        channel.config().setAutoRead(true);
                     }
-                }
-        ));
+                },
+                null
+        );
+        task.execute(new Continuation() {
+            @Override
+            public void resume() {}
+
+            @Override
+            public void resumeWithException(Throwable exception) {
+                snap.getLogger().error("Error while forwarding ConnectionInitEvent", exception);
+                channel.close();
+            }
+        });
     }
 }
@@ -18,32 +18,536 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.google.common.collect.MapMaker;
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventHandler;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.ResultedEvent;
 import com.velocitypowered.api.proxy.InboundConnection;
 import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.scheduler.ScheduledTask;
 import de.themoep.snap.Snap;
+import net.kyori.adventure.text.Component;
+import net.md_5.bungee.api.Callback;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.config.ListenerInfo;
 import net.md_5.bungee.api.connection.PendingConnection;
+import net.md_5.bungee.api.event.AsyncEvent;
 import net.md_5.bungee.api.plugin.Event;
+import net.md_5.bungee.api.plugin.Plugin;
 
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public abstract class ForwardingListener<E> {
+    private static final long DEFAULT_ASYNC_TIMEOUT = 0;
+    private static final long DEFAULT_AUTO_THRESHOLD = 250;
+    private static Field intentsField;
+    // The sync Bungee event which the forward call on this thread called, its observers get posted once it returned
+    private static final ThreadLocal<Event> calledEvent = new ThreadLocal<>();
 
-public abstract class ForwardingListener {
     protected final Snap snap;
+    private final Class<E> event;
     private final Class<? extends Event> forwardedEvent;
+    private final PostOrder order;
+    private final long asyncTimeout;
+    private final boolean denyOnTimeout;
+    private final ExecutionMode executionMode;
+    private final long autoThresholdNanos;
+    private volatile long averageNanos = 0;
+    private volatile boolean slow = false;
+    private volatile Map<PostOrder, EventHandler<E>> subscribedBands = Map.of();
+    // Bungee events shared between the bands of one Velocity event, weak so that events which skip a band don't leak
+    private final ConcurrentMap<Object, Event> sharedEvents = new MapMaker().weakKeys().makeMap();
+    private volatile PostOrder firstBand = null;
+    private volatile PostOrder lastBand = null;
+
+    /**
+     * Create a listener which gets called in the post orders matching the priorities of the Bungee handlers
+     * @param snap              The Snap instance
+     * @param event             The Velocity event to listen to
+     * @param forwardedEvent    The Bungee event to forward it to
+     */
+    public ForwardingListener(Snap snap, Class<E> event, Class<? extends Event> forwardedEvent) {
+        this(snap, event, forwardedEvent, null);
+    }
 
-    public ForwardingListener(Snap snap, Class<? extends Event> forwardedEvent) {
+    /**
+     * Create a listener which always gets called in a fixed post order and calls all Bungee handlers at once
+     * @param snap              The Snap instance
+     * @param event             The Velocity event to listen to
+     * @param forwardedEvent    The Bungee event to forward it to
+     * @param order             The fixed post order or null if it should follow the Bungee priorities
+     */
+    public ForwardingListener(Snap snap, Class<E> event, Class<? extends Event> forwardedEvent, PostOrder order) {
         this.snap = snap;
+        this.event = event;
         this.forwardedEvent = forwardedEvent;
+        this.order = order;
+        String timeoutPath = "async-event-timeouts." + forwardedEvent.getSimpleName();
+        this.asyncTimeout = snap.getConfig().getInt(timeoutPath + ".timeout", (int) DEFAULT_ASYNC_TIMEOUT);
+        // Fail closed, a timed out login must not skip the checks of slow ban or auth plugins
+        this.denyOnTimeout = !"allow".equalsIgnoreCase(snap.getConfig().getString(timeoutPath + ".result", "deny"));
+        String mode = snap.getConfig().getString("execution-modes." + forwardedEvent.getSimpleName(),
+                snap.getConfig().getString("execution-modes.default", "async"));
+        ExecutionMode executionMode;
+        try {
+            executionMode = ExecutionMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            snap.getLogger().warn("Unknown execution mode " + mode + " for " + forwardedEvent.getSimpleName() + ", using async");
+            executionMode = ExecutionMode.ASYNC;
+        }
+        this.executionMode = executionMode;
+        this.autoThresholdNanos = TimeUnit.MICROSECONDS.toNanos(snap.getConfig().getInt("execution-modes.auto-threshold", (int) DEFAULT_AUTO_THRESHOLD));
+    }
+
+    public Class<E> getEvent() {
+        return event;
     }
 
     public Class<? extends Event> getForwardedEvent() {
         return forwardedEvent;
     }
 
+    /**
+     * Get the fixed post order of this listener
+     * @return The post order or null if the listener follows the priorities of the Bungee handlers
+     */
+    public PostOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Forward a Velocity event to the Bungee handlers
+     * @param event The Velocity event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return An {@link EventTask} if the forwarding completes asynchronously or null if it is already done
+     */
+    public abstract EventTask forward(E event, PostOrder band);
+
+    /**
+     * Set the post order bands that this listener currently forwards in
+     * @param orders    The post orders, empty if it doesn't forward at all
+     */
+    public void setBands(Set<PostOrder> orders) {
+        PostOrder first = null;
+        PostOrder last = null;
+        for (PostOrder order : orders) {
+            if (first == null) {
+                first = order;
+            }
+            last = order;
+        }
+        firstBand = first;
+        lastBand = last;
+    }
+
+    /**
+     * Check whether this listener is currently registered to forward events
+     * @return Whether it forwards in at least one post order
+     */
+    public boolean isForwarding() {
+        return lastBand != null;
+    }
+
+    /**
+     * Get the Bungee event that a Velocity event gets forwarded as. All bands of one Velocity event share the same
+     * Bungee event so that state which handlers of an earlier band set on it is still there for the later ones.
+     * Must not be used for {@link AsyncEvent}s as those can only be called once.
+     * @param event     The Velocity event
+     * @param band      The post order band that is being forwarded or null if all handlers get called at once
+     * @param factory   Creates the Bungee event when the first band forwards it
+     * @return The Bungee event
+     */
+    protected <T extends Event> T getSharedEvent(E event, PostOrder band, Supplier<T> factory) {
+        if (band == null || (band == firstBand && band == lastBand)) {
+            return factory.get();
+        }
+        T forwarded = (T) sharedEvents.computeIfAbsent(event, e -> factory.get());
+        if (band == lastBand) {
+            sharedEvents.remove(event);
+        }
+        return forwarded;
+    }
+
+    /**
+     * Call a Bungee event for the handlers of a specific band
+     * @param event The Bungee event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The called event
+     */
+    protected <T extends Event> T callEvent(T event, PostOrder band) {
+        snap.getBungeeAdapter().callEvent(event, band);
+        if (!(event instanceof AsyncEvent)) {
+            calledEvent.set(event);
+        }
+        return event;
+    }
+
+    /**
+     * Create an event task which resumes the continuation once the Bungee event completed.
+     * If an async event executor is configured the Bungee handlers get called on it instead of Velocity's event thread.
+     * @param task  The task which calls the Bungee event and resumes the continuation when it is done
+     * @return The event task
+     */
+    protected EventTask withContinuation(Consumer<Continuation> task) {
+        Executor executor = snap.getBungeeAdapter().getAsyncEventExecutor();
+        if (executor == null) {
+            return EventTask.withContinuation(task);
+        }
+        return EventTask.withContinuation(continuation -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.accept(continuation);
+                    } catch (Throwable t) {
+                        continuation.resumeWithException(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Executor is shutting down, just call it directly
+                task.accept(continuation);
+            }
+        });
+    }
+
+    /**
+     * Call a Bungee async event and resume the continuation once all intents of it completed or the timeout of
+     * the event type expired, whichever happens first. Results of intents completing after the timeout are ignored.
+     * @param eventFactory  Creates the Bungee event with the callback that needs to get called when it is done
+     * @param onComplete    Applies the result of the Bungee event to the Velocity event
+     * @param onTimeout     Applies the fallback result to the Velocity event if the timeout expired
+     * @param band          The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The event task
+     */
+    protected <T extends AsyncEvent<T>> EventTask callAsyncEvent(Function<Callback<T>, T> eventFactory, Consumer<T> onComplete, Runnable onTimeout, PostOrder band) {
+        return withContinuation(continuation -> {
+            AtomicBoolean done = new AtomicBoolean(false);
+            AtomicReference<ScheduledTask> timeoutTask = new AtomicReference<>();
+            T event = eventFactory.apply((e, t) -> {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                ScheduledTask task = timeoutTask.get();
+                if (task != null) {
+                    task.cancel();
+                }
+                if (t != null) {
+                    continuation.resumeWithException(t);
+                    return;
+                }
+                try {
+                    onComplete.accept(e);
+                    snap.getBungeeAdapter().postObservers(e, band, this::snapshot);
+                    continuation.resume();
+                } catch (Throwable ex) {
+                    continuation.resumeWithException(ex);
+                }
+            });
+            if (asyncTimeout > 0) {
+                timeoutTask.set(snap.getProxy().getScheduler().buildTask(snap, () -> {
+                    if (done.compareAndSet(false, true)) {
+                        snap.getLogger().warn(forwardedEvent.getSimpleName() + " did not complete within " + asyncTimeout + "ms"
+                                + " (intents still held by " + getPendingIntents(event) + "), continuing with fallback result");
+                        try {
+                            onTimeout.run();
+                        } finally {
+                            continuation.resume();
+                        }
+                    }
+                }).delay(asyncTimeout, TimeUnit.MILLISECONDS).schedule());
+                if (done.get()) {
+                    // Event completed before we could set the timeout task
+                    timeoutTask.get().cancel();
+                }
+            }
+            callEvent(event, band);
+        });
+    }
+
+    /**
+     * Pass an event task through an admission control
+     * @param admission The admission control or null if it should not be limited
+     * @param connection  The connection that the event belongs to or null if it can't keep its permit
+     * @param task        The event task
+     * @param onReject    Applies the rejection message to the Velocity event if it was not admitted
+     * @param keep        Whether the connection keeps its permit for its next event once the task completed
+     * @return The event task which only executes the given task once it got admitted
+     */
+    protected EventTask admit(AdmissionControl admission, InboundConnection connection, EventTask task, Consumer<Component> onReject, BooleanSupplier keep) {
+        return admission != null ? admission.admit(connection, task, onReject, keep) : task;
+    }
+
+    /**
+     * Whether the connection should be denied if a login related async event ran into its timeout
+     * @return Whether to deny the connection, otherwise it gets allowed
+     */
+    protected boolean shouldDenyOnTimeout() {
+        return denyOnTimeout;
+    }
+
+    /**
+     * Get the names of plugins which registered intents on an async event that they haven't completed yet
+     * @param event The event
+     * @return A string listing the plugin names
+     */
+    private String getPendingIntents(AsyncEvent<?> event) {
+        try {
+            if (intentsField == null) {
+                Field field = AsyncEvent.class.getDeclaredField("intents");
+                field.setAccessible(true);
+                intentsField = field;
+            }
+            Map<Plugin, AtomicInteger> intents = (Map<Plugin, AtomicInteger>) intentsField.get(event);
+            String plugins = intents.entrySet().stream()
+                    .filter(e -> e.getValue().get() > 0)
+                    .map(e -> e.getKey().getDescription().getName())
+                    .collect(Collectors.joining(", "));
+            return plugins.isEmpty() ? "no plugin" : plugins;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return "unknown plugins";
+        }
+    }
+
+    /**
+     * Create the Velocity handler which forwards events to a band of Bungee handlers
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The handler to register with Velocity's event manager
+     */
+    public EventHandler<E> createHandler(PostOrder band) {
+        return new EventHandler<>() {
+            @Override
+            public void execute(E event) {
+                EventTask task = executeAsync(event);
+                if (task != null) {
+                    task.execute(new Continuation() {
+                        @Override
+                        public void resume() {}
+
+                        @Override
+                        public void resumeWithException(Throwable exception) {
+                            snap.getLogger().error("Error while forwarding " + forwardedEvent.getSimpleName(), exception);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public EventTask executeAsync(E event) {
+                if (!shouldForward(event, band)) {
+                    return null;
+                }
+                if (band != null && isDenied(event) && snap.getBungeeAdapter().shouldSkipCancelled(forwardedEvent, band)) {
+                    return null;
+                }
+                if (band != null && !snap.getBungeeAdapter().getEventBus().sample(forwardedEvent, band)) {
+                    // None of the sampled handlers in this band would get called with it, don't even create the event
+                    return null;
+                }
+                PlayerLanes lanes = snap.getBungeeAdapter().getPlayerLanes();
+                UUID playerId = lanes != null ? getPlayerId(event) : null;
+                if (playerId != null) {
+                    return EventTask.withContinuation(continuation -> lanes.execute(playerId, () -> {
+                        EventTask task = timedForward(event, band);
+                        if (task != null) {
+                            task.execute(continuation);
+                        } else {
+                            continuation.resume();
+                        }
+                    }));
+                }
+                if (executionMode == ExecutionMode.INLINE || (executionMode == ExecutionMode.AUTO && !slow)) {
+                    return timedForward(event, band);
+                }
+                // Let Velocity hop onto its async event executor before calling the Bungee handlers
+                return new EventTask() {
+                    @Override
+                    public boolean requiresAsync() {
+                        return true;
+                    }
+
+                    @Override
+                    public void execute(Continuation continuation) {
+                        EventTask task = timedForward(event, band);
+                        if (task != null) {
+                            task.execute(continuation);
+                        } else {
+                            continuation.resume();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Create a listener with a {@link com.velocitypowered.api.event.Subscribe} method for every post order which
+     * doesn't require async execution. Velocity always calls handlers registered through
+     * {@link com.velocitypowered.api.event.EventManager#register(Object, Class, PostOrder, EventHandler)} async so
+     * the inline and auto execution modes only work for listeners which provide one.
+     * @return The subscriber or null if the listener only supports async execution
+     */
+    public Object createSubscriber() {
+        return null;
+    }
+
+    /**
+     * Set the post orders in which the subscriber should forward the event
+     * @param orders    The post orders, empty if it shouldn't forward at all
+     */
+    public void setSubscribedBands(Set<PostOrder> orders) {
+        Map<PostOrder, EventHandler<E>> bands = new EnumMap<>(PostOrder.class);
+        for (PostOrder order : orders) {
+            bands.put(order, createHandler(this.order != null ? null : order));
+        }
+        subscribedBands = bands;
+    }
+
+    /**
+     * Forward an event from the subscriber
+     * @param event The Velocity event
+     * @param order The post order the subscriber got called in
+     * @return The event task or null if nothing needs to be done in that post order
+     */
+    protected EventTask subscribed(E event, PostOrder order) {
+        EventHandler<E> handler = subscribedBands.get(order);
+        return handler != null ? handler.executeAsync(event) : null;
+    }
+
+    /**
+     * Create the copy of a called Bungee event that the observers get. They run on another thread while Velocity
+     * keeps using its event so anything that still references the Velocity event's state needs to be copied.
+     * @param event The called Bungee event, its result was already written back
+     * @return A copy which is detached from the Velocity event or the event itself if it doesn't reference any of its state
+     */
+    protected Event snapshot(Event event) {
+        return event;
+    }
+
+    /**
+     * Check whether an event needs to be forwarded at all. This gets checked on the thread that fired the event
+     * before it gets queued on a player lane or handed to the async executor so it needs to be cheap.
+     * @param event The Velocity event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return Whether to forward the event, otherwise it doesn't even get scheduled
+     */
+    protected boolean shouldForward(E event, PostOrder band) {
+        return true;
+    }
+
+    /**
+     * Get the player that an event belongs to so that it can be forwarded on the lane of the player
+     * @param event The Velocity event
+     * @return The UUID of the player or null if the event doesn't belong to one
+     */
+    protected UUID getPlayerId(E event) {
+        return null;
+    }
+
+    /**
+     * Forward an event and measure how long calling the Bungee handlers took if the listener is in auto mode
+     * @param event The Velocity event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The result of {@link #observedForward(Object, PostOrder)}
+     */
+    private EventTask timedForward(E event, PostOrder band) {
+        if (executionMode != ExecutionMode.AUTO) {
+            return observedForward(event, band);
+        }
+        long start = System.nanoTime();
+        try {
+            return observedForward(event, band);
+        } finally {
+            // Exponentially weighted moving average, occasional lost updates from concurrent events don't matter here
+            long elapsed = System.nanoTime() - start;
+            long average = averageNanos;
+            average += (elapsed - average) / 16;
+            averageNanos = average;
+            // A single slow call already switches to async so that rare blocking calls can't hide in the average
+            if (slow ? average < autoThresholdNanos / 2 : elapsed > autoThresholdNanos || average > autoThresholdNanos) {
+                slow = !slow;
+                snap.getLogger().debug("Switching forwarding of " + forwardedEvent.getSimpleName() + " to " + (slow ? "async" : "inline")
+                        + " execution (average " + TimeUnit.NANOSECONDS.toMicros(average) + "µs)");
+            }
+        }
+    }
+
+    /**
+     * Forward an event and post the observers of the called Bungee event once the result was written back to
+     * Velocity so that they never see the event while the forwarding still reads from it.
+     * Async events post their observers themselves when they complete.
+     * @param event The Velocity event
+     * @param band  The post order band of Bungee priorities to call or null if all handlers should be called
+     * @return The result of {@link #forward(Object, PostOrder)}
+     */
+    private EventTask observedForward(E event, PostOrder band) {
+        // Save the outer event in case the forwarding of another event got called from inside a Bungee handler
+        Event outer = calledEvent.get();
+        calledEvent.remove();
+        EventTask task;
+        Event called;
+        try {
+            task = forward(event, band);
+            called = calledEvent.get();
+        } finally {
+            if (outer != null) {
+                calledEvent.set(outer);
+            } else {
+                calledEvent.remove();
+            }
+        }
+        if (called != null) {
+            snap.getBungeeAdapter().postObservers(called, band, this::snapshot);
+        }
+        return task;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * How a forwarding listener gets executed by Velocity's event manager
+     */
+    public enum ExecutionMode {
+        /**
+         * Call the Bungee handlers directly on the thread that fired the Velocity event
+         */
+        INLINE,
+        /**
+         * Hop onto Velocity's async event executor before calling the Bungee handlers
+         */
+        ASYNC,
+        /**
+         * Execute inline as long as the Bungee handlers are fast, async otherwise
+         */
+        AUTO
+    }
+
+    private static boolean isDenied(Object event) {
+        return event instanceof ResultedEvent<?> resulted && !resulted.getResult().isAllowed();
+    }
+
     protected PendingConnection convertConnection(InboundConnection connection) {
         return new PendingConnection() {
             @Override
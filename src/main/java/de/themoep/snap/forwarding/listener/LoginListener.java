@@ -18,37 +18,44 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.ResultedEvent;
-import com.velocitypowered.api.event.Subscribe;
 import de.themoep.snap.Snap;
 import de.themoep.snap.SnapUtils;
 import net.md_5.bungee.api.event.LoginEvent;
 
-public class LoginListener extends ForwardingListener {
+public class LoginListener extends ForwardingListener<com.velocitypowered.api.event.connection.LoginEvent> {
 
     public LoginListener(Snap snap) {
-        super(snap, LoginEvent.class);
+        // Async events can only be called once so all handlers get called together instead of per band
+        super(snap, com.velocitypowered.api.event.connection.LoginEvent.class, LoginEvent.class, PostOrder.NORMAL);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.connection.LoginEvent event, Continuation continuation) {
-        LoginEvent e = new LoginEvent(snap.getPlayer(event.getPlayer()).getPendingConnection(), (le, t) -> {
-            if (le.isCancelled() && event.getResult().isAllowed()) {
-                event.setResult(ResultedEvent.ComponentResult.denied(SnapUtils.convertComponent(le.getCancelReasonComponents())));
-            } else if (!le.isCancelled() && !event.getResult().isAllowed()) {
-                event.setResult(ResultedEvent.ComponentResult.allowed());
-            }
-            if (t != null) {
-                continuation.resumeWithException(t);
-            } else {
-                continuation.resume();
-            }
-        });
-        if (!event.getResult().isAllowed()) {
-            e.setCancelled(true);
-            event.getResult().getReasonComponent().ifPresent(c -> e.setCancelReason(SnapUtils.convertComponent(c)));
-        }
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.connection.LoginEvent event, PostOrder band) {
+        return admit(snap.getBungeeAdapter().getLoginAdmission(), event.getPlayer(), callAsyncEvent(
+                callback -> {
+                    LoginEvent e = new LoginEvent(snap.getPlayer(event.getPlayer()).getPendingConnection(), callback);
+                    if (!event.getResult().isAllowed()) {
+                        e.setCancelled(true);
+                        event.getResult().getReasonComponent().ifPresent(c -> e.setCancelReason(SnapUtils.convertComponent(c)));
+                    }
+                    return e;
+                },
+                le -> {
+                    if (le.isCancelled() && event.getResult().isAllowed()) {
+                        event.setResult(ResultedEvent.ComponentResult.denied(SnapUtils.convertComponent(le.getCancelReasonComponents())));
+                    } else if (!le.isCancelled() && !event.getResult().isAllowed()) {
+                        event.setResult(ResultedEvent.ComponentResult.allowed());
+                    }
+                },
+                () -> {
+                    if (shouldDenyOnTimeout()) {
+                        event.setResult(ResultedEvent.ComponentResult.denied(snap.getTimeoutMessage()));
+                    }
+                },
+                band
+        ), message -> event.setResult(ResultedEvent.ComponentResult.denied(message)), null);
     }
 }
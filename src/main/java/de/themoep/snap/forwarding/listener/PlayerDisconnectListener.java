@@ -18,20 +18,35 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
 import de.themoep.snap.Snap;
+import de.themoep.snap.forwarding.SnapPlayer;
 import net.md_5.bungee.api.event.PlayerDisconnectEvent;
 
-public class PlayerDisconnectListener extends ForwardingListener {
+import java.util.UUID;
+
+public class PlayerDisconnectListener extends ForwardingListener<DisconnectEvent> {
 
     public PlayerDisconnectListener(Snap snap) {
-        super(snap, PlayerDisconnectEvent.class);
+        // Fixed before the LAST post order in which Snap removes the player so that it can't get created again
+        super(snap, DisconnectEvent.class, PlayerDisconnectEvent.class, PostOrder.LATE);
+    }
+
+    @Override
+    protected UUID getPlayerId(DisconnectEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(DisconnectEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new PlayerDisconnectEvent(snap.getPlayer(event.getPlayer())));
+    @Override
+    public EventTask forward(DisconnectEvent event, PostOrder band) {
+        SnapPlayer player = snap.getPlayers().get(event.getPlayer().getUniqueId());
+        if (player != null) {
+            // Players whose login got denied never got a wrapper, Bungee doesn't call the event for them either
+            callEvent(new PlayerDisconnectEvent(player), band);
+        }
+        return null;
     }
 
 }
@@ -18,23 +18,36 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.connection.ConnectionHandshakeEvent;
+import com.velocitypowered.api.network.HandshakeIntent;
 import de.themoep.snap.Snap;
+import de.themoep.snap.event.HandlerList;
+import de.themoep.snap.event.HandlerMethod;
 import net.md_5.bungee.api.event.PlayerHandshakeEvent;
 import net.md_5.bungee.protocol.packet.Handshake;
 
 import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
 
-public class PlayerHandshakeListener extends ForwardingListener {
+public class PlayerHandshakeListener extends ForwardingListener<ConnectionHandshakeEvent> {
+    private final Set<String> statusHandshakePlugins;
 
     public PlayerHandshakeListener(Snap snap) {
-        super(snap, PlayerHandshakeEvent.class);
+        super(snap, ConnectionHandshakeEvent.class, PlayerHandshakeEvent.class);
+        statusHandshakePlugins = new HashSet<>(snap.getConfig().getStringList("status-handshake-plugins"));
     }
 
-    @Subscribe
-    public void on(ConnectionHandshakeEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new PlayerHandshakeEvent(
+    @Override
+    protected boolean shouldForward(ConnectionHandshakeEvent event, PostOrder band) {
+        return event.getIntent() != HandshakeIntent.STATUS || wantsStatusHandshakes(band);
+    }
+
+    @Override
+    public EventTask forward(ConnectionHandshakeEvent event, PostOrder band) {
+        callEvent(getSharedEvent(event, band, () -> new PlayerHandshakeEvent(
                 convertConnection(event.getConnection()),
                 new Handshake(
                         event.getConnection().getProtocolVersion().getProtocol(),
@@ -58,6 +71,29 @@ public class PlayerHandshakeListener extends ForwardingListener {
                         snap.unsupported();
                     }
                 }
-        ));
+        )), band);
+        return null;
+    }
+
+    /**
+     * Check whether any handler in a band belongs to a plugin that wants to receive handshakes of server list pings
+     * @param band  The post order band or null for all handlers
+     * @return Whether the handshake should be forwarded
+     */
+    private boolean wantsStatusHandshakes(PostOrder band) {
+        if (statusHandshakePlugins.isEmpty()) {
+            return false;
+        } else if (statusHandshakePlugins.contains("*")) {
+            return true;
+        }
+        HandlerList handlers = snap.getBungeeAdapter().getEventBus().getHandlers(PlayerHandshakeEvent.class);
+        if (handlers != null) {
+            for (HandlerMethod handler : handlers.getHandlers(band)) {
+                if (statusHandshakePlugins.contains(handler.getPluginName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
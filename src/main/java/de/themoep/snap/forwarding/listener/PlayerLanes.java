@@ -0,0 +1,100 @@
+package de.themoep.snap.forwarding.listener;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import de.themoep.snap.Snap;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks in order per player while tasks of different players can run in parallel.
+ * Players are striped onto a fixed amount of lanes, each lane is a lock-free queue
+ * that gets drained by at most one worker of the executor at a time.
+ */
+public class PlayerLanes {
+    private final Snap snap;
+    private final Executor executor;
+    private final Lane[] lanes;
+    private final int mask;
+
+    /**
+     * Create new player lanes
+     * @param snap      The Snap instance
+     * @param executor  The executor that the lanes get drained on
+     * @param lanes     The amount of lanes, gets rounded up to the next power of two
+     */
+    public PlayerLanes(Snap snap, Executor executor, int lanes) {
+        this.snap = snap;
+        this.executor = executor;
+        int size = lanes > 1 ? Integer.highestOneBit(lanes - 1) << 1 : 1;
+        this.lanes = new Lane[size];
+        for (int i = 0; i < size; i++) {
+            this.lanes[i] = new Lane();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Run a task on the lane of a player
+     * @param playerId  The UUID of the player
+     * @param task      The task to run after all previously submitted tasks of the same lane
+     */
+    public void execute(UUID playerId, Runnable task) {
+        int hash = playerId.hashCode();
+        lanes[(hash ^ (hash >>> 16)) & mask].submit(task);
+    }
+
+    private class Lane implements Runnable {
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private void submit(Runnable task) {
+            queue.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    snap.getLogger().error("Error while running task on player lane", t);
+                }
+            }
+            scheduled.set(false);
+            // A task might have been added after we stopped polling but before we reset the flag
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
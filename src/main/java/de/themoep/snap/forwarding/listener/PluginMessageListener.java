@@ -18,43 +18,74 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.connection.PluginMessageEvent.ForwardResult;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import de.themoep.snap.Snap;
-import de.themoep.snap.forwarding.SnapServer;
+import de.themoep.snap.forwarding.event.LazyPluginMessageEvent;
 import net.md_5.bungee.api.connection.Connection;
 import net.md_5.bungee.api.event.PluginMessageEvent;
+import net.md_5.bungee.api.plugin.Event;
 
-public class PluginMessageListener extends ForwardingListener {
+import java.util.UUID;
+
+public class PluginMessageListener extends ForwardingListener<com.velocitypowered.api.event.connection.PluginMessageEvent> {
 
     public PluginMessageListener(Snap snap) {
-        super(snap, PluginMessageEvent.class);
+        super(snap, com.velocitypowered.api.event.connection.PluginMessageEvent.class, PluginMessageEvent.class);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.connection.PluginMessageEvent event) {
-        Connection sender = convert(event.getSource(), event.getTarget());
-        Connection receiver = convert(event.getTarget(), event.getSource());
+    @Override
+    protected UUID getPlayerId(com.velocitypowered.api.event.connection.PluginMessageEvent event) {
+        if (event.getSource() instanceof Player player) {
+            return player.getUniqueId();
+        } else if (event.getTarget() instanceof Player player) {
+            return player.getUniqueId();
+        }
+        return null;
+    }
 
-        PluginMessageEvent e = new PluginMessageEvent(sender, receiver, event.getIdentifier().getId(), event.getData());
+    @Override
+    protected boolean shouldForward(com.velocitypowered.api.event.connection.PluginMessageEvent event, PostOrder band) {
+        return snap.getBungeeAdapter().getProxy().isForwardedChannel(event.getIdentifier().getId());
+    }
+
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.connection.PluginMessageEvent event, PostOrder band) {
+        PluginMessageEvent e = getSharedEvent(event, band, () -> new LazyPluginMessageEvent(
+                convert(event.getSource(), event.getTarget()),
+                convert(event.getTarget(), event.getSource()),
+                event.getIdentifier().getId(),
+                event::getData
+        ));
         e.setCancelled(!event.getResult().isAllowed());
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+        callEvent(e, band);
         event.setResult(e.isCancelled() ? ForwardResult.handled() : ForwardResult.forward());
+        return null;
+    }
+
+    @Override
+    protected Event snapshot(Event event) {
+        // Copy the payload eagerly, the lazy event would read it from the Velocity event
+        PluginMessageEvent e = (PluginMessageEvent) event;
+        PluginMessageEvent copy = new PluginMessageEvent(e.getSender(), e.getReceiver(), e.getTag(), e.getData().clone());
+        copy.setCancelled(e.isCancelled());
+        return copy;
     }
 
     private Connection convert(Object o, Object other) {
         if (o instanceof Player) {
             return snap.getPlayer((Player) o);
         } else if (o instanceof ServerConnection) {
-            return new SnapServer(snap, (ServerConnection) o);
+            return snap.getPlayer(((ServerConnection) o).getPlayer()).getServer(((ServerConnection) o).getServer());
         } else if (o instanceof RegisteredServer) {
             if (other instanceof Player && ((Player) other).getCurrentServer().isPresent() && ((Player) other).getCurrentServer().get().getServer() == o) {
-                return new SnapServer(snap, ((Player) other).getCurrentServer().get());
+                return snap.getPlayer((Player) other).getServer((RegisteredServer) o);
             } else if (!((RegisteredServer) o).getPlayersConnected().isEmpty()) {
-                return new SnapServer(snap, ((RegisteredServer) o).getPlayersConnected().iterator().next().getCurrentServer().get());
+                return snap.getPlayer(((RegisteredServer) o).getPlayersConnected().iterator().next()).getServer((RegisteredServer) o);
             }
         }
         return null;
@@ -18,39 +18,37 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
-import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.PlayerChooseInitialServerEvent;
 import de.themoep.snap.Snap;
 import de.themoep.snap.forwarding.SnapServerInfo;
 import net.md_5.bungee.api.event.PostLoginEvent;
 
-public class PostLoginListener extends ForwardingListener {
+public class PostLoginListener extends ForwardingListener<PlayerChooseInitialServerEvent> {
 
     public PostLoginListener(Snap snap) {
-        super(snap, PostLoginEvent.class);
+        super(snap, PlayerChooseInitialServerEvent.class, PostLoginEvent.class, PostOrder.FIRST);
     }
 
-    @Subscribe(order = PostOrder.FIRST)
-    public void on(PlayerChooseInitialServerEvent event, Continuation continuation) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new PostLoginEvent(
-                snap.getPlayer(event.getPlayer()),
-                snap.getServerInfo(event.getInitialServer().orElse(null)),
-                (e, t) -> {
+    @Override
+    public EventTask forward(PlayerChooseInitialServerEvent event, PostOrder band) {
+        return callAsyncEvent(
+                callback -> new PostLoginEvent(
+                        snap.getPlayer(event.getPlayer()),
+                        snap.getServerInfo(event.getInitialServer().orElse(null)),
+                        callback
+                ),
+                e -> {
                     if (e.getTarget() != null) {
                         event.setInitialServer(((SnapServerInfo) e.getTarget()).getServer());
                     } else {
                         event.setInitialServer(null);
                     }
-                    if (t != null) {
-                        continuation.resumeWithException(t);
-                    } else {
-                        continuation.resume();
-                    }
-                }
-        ));
-
+                },
+                () -> {}, // Keep the initial server that Velocity chose
+                band
+        );
     }
 
 }
@@ -18,14 +18,16 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Continuation;
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import de.themoep.snap.Snap;
 import net.kyori.adventure.text.serializer.bungeecord.BungeeComponentSerializer;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import net.md_5.bungee.api.Callback;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.config.ListenerInfo;
 import net.md_5.bungee.api.connection.PendingConnection;
+import net.md_5.bungee.api.event.LoginEvent;
 import net.md_5.bungee.api.event.PreLoginEvent;
 
 import java.net.InetSocketAddress;
@@ -33,19 +35,40 @@ import java.net.SocketAddress;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
-public class PreLoginListener extends ForwardingListener {
+public class PreLoginListener extends ForwardingListener<com.velocitypowered.api.event.connection.PreLoginEvent> {
 
     public PreLoginListener(Snap snap) {
-        super(snap, PreLoginEvent.class);
+        // Async events can only be called once so all handlers get called together instead of per band
+        super(snap, com.velocitypowered.api.event.connection.PreLoginEvent.class, PreLoginEvent.class, PostOrder.NORMAL);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.connection.PreLoginEvent event, Continuation continuation) {
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.connection.PreLoginEvent event, PostOrder band) {
         if (!event.getResult().isAllowed()) {
-            return;
+            return null;
         }
 
-        snap.getBungeeAdapter().getPluginManager().callEvent(new PreLoginEvent(new PendingConnection() {
+        // The connection keeps its permit for the LoginEvent so that every login only gets admitted once
+        return admit(snap.getBungeeAdapter().getLoginAdmission(), event.getConnection(), callAsyncEvent(
+                callback -> createEvent(event, callback),
+                e -> {
+                    if (e.isCancelled()) {
+                        event.setResult(com.velocitypowered.api.event.connection.PreLoginEvent.PreLoginComponentResult.denied(
+                                BungeeComponentSerializer.get().deserialize(e.getCancelReasonComponents())));
+                    }
+                },
+                () -> {
+                    if (shouldDenyOnTimeout()) {
+                        event.setResult(com.velocitypowered.api.event.connection.PreLoginEvent.PreLoginComponentResult.denied(snap.getTimeoutMessage()));
+                    }
+                },
+                band
+        ), message -> event.setResult(com.velocitypowered.api.event.connection.PreLoginEvent.PreLoginComponentResult.denied(message)),
+                () -> event.getResult().isAllowed() && snap.getBungeeAdapter().isForwarding(LoginEvent.class));
+    }
+
+    private PreLoginEvent createEvent(com.velocitypowered.api.event.connection.PreLoginEvent event, Callback<PreLoginEvent> callback) {
+        return new PreLoginEvent(new PendingConnection() {
             @Override
             public String getName() {
                 return event.getUsername();
@@ -158,17 +181,6 @@ public class PreLoginListener extends ForwardingListener {
             public Unsafe unsafe() {
                 return (Unsafe) snap.unsupported("Unsafe is not supported in Snap!");
             }
-        }, (e, t) -> {
-            if (e.isCancelled()) {
-                event.setResult(com.velocitypowered.api.event.connection.PreLoginEvent.PreLoginComponentResult.denied(
-                        BungeeComponentSerializer.get().deserialize(e .getCancelReasonComponents())));
-            }
-            if (t != null) {
-                continuation.resumeWithException(t);
-            } else {
-                continuation.resume();
-            }
-        }));
-
+        }, callback);
     }
 }
@@ -18,30 +18,32 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Continuation;
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import de.themoep.snap.Snap;
 import de.themoep.snap.SnapUtils;
+import de.themoep.snap.forwarding.event.TrackedServerPing;
 import net.md_5.bungee.api.event.ProxyPingEvent;
 
-public class ProxyPingListener extends ForwardingListener {
+public class ProxyPingListener extends ForwardingListener<com.velocitypowered.api.event.proxy.ProxyPingEvent> {
 
     public ProxyPingListener(Snap snap) {
-        super(snap, ProxyPingEvent.class);
+        // Async events can only be called once so all handlers get called together instead of per band
+        super(snap, com.velocitypowered.api.event.proxy.ProxyPingEvent.class, ProxyPingEvent.class, PostOrder.NORMAL);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.proxy.ProxyPingEvent event, Continuation continuation) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ProxyPingEvent(
-                convertConnection(event.getConnection()),
-                SnapUtils.convertPing(event.getPing()),
-                (e, t) -> {
-                    event.setPing(SnapUtils.convertPing(e.getResponse()));
-                    if (t != null) {
-                        continuation.resumeWithException(t);
-                    } else {
-                        continuation.resume();
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.proxy.ProxyPingEvent event, PostOrder band) {
+        TrackedServerPing ping = new TrackedServerPing(SnapUtils.convertPing(event.getPing()));
+        return callAsyncEvent(
+                callback -> new ProxyPingEvent(convertConnection(event.getConnection()), ping, callback),
+                e -> {
+                    if (e.getResponse() != ping || ping.isModified()) {
+                        event.setPing(SnapUtils.convertPing(e.getResponse()));
                     }
-                }));
+                },
+                () -> {}, // Keep the ping that Velocity created
+                band
+        );
     }
 }
@@ -18,36 +18,39 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import de.themoep.snap.Snap;
+import de.themoep.snap.forwarding.event.TrackedQueryResult;
 import io.github.waterfallmc.waterfall.QueryResult;
 import io.github.waterfallmc.waterfall.event.ProxyQueryEvent;
 
 import java.util.ArrayList;
 
-public class ProxyQueryListener extends ForwardingListener {
+public class ProxyQueryListener extends ForwardingListener<com.velocitypowered.api.event.query.ProxyQueryEvent> {
 
     public ProxyQueryListener(Snap snap) {
-        super(snap, ProxyQueryEvent.class);
+        super(snap, com.velocitypowered.api.event.query.ProxyQueryEvent.class, ProxyQueryEvent.class);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.query.ProxyQueryEvent event) {
-        QueryResult r = snap.getBungeeAdapter().getPluginManager().callEvent(new ProxyQueryEvent(
-                snap.getBungeeAdapter().getProxy().getListener(),
-                new QueryResult(
-                        event.getResponse().getHostname(),
-                        "SMP",
-                        event.getResponse().getMap(),
-                        event.getResponse().getCurrentPlayers(),
-                        event.getResponse().getMaxPlayers(),
-                        event.getResponse().getProxyPort(),
-                        event.getResponse().getProxyHost(),
-                        "MINECRAFT",
-                        new ArrayList<>(event.getResponse().getPlayers()),
-                        event.getResponse().getGameVersion()
-                )
-        )).getResult();
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.query.ProxyQueryEvent event, PostOrder band) {
+        ProxyQueryEvent e = getSharedEvent(event, band, () -> new ProxyQueryEvent(snap.getBungeeAdapter().getProxy().getListener(), new TrackedQueryResult(
+                event.getResponse().getHostname(),
+                "SMP",
+                event.getResponse().getMap(),
+                event.getResponse().getCurrentPlayers(),
+                event.getResponse().getMaxPlayers(),
+                event.getResponse().getProxyPort(),
+                event.getResponse().getProxyHost(),
+                "MINECRAFT",
+                new ArrayList<>(event.getResponse().getPlayers()),
+                event.getResponse().getGameVersion()
+        )));
+        QueryResult r = callEvent(e, band).getResult();
+        if (r instanceof TrackedQueryResult result && !result.isModified()) {
+            return null;
+        }
 
         event.setResponse(event.getResponse().toBuilder()
                 .hostname(r.getMotd())
@@ -60,5 +63,6 @@ public class ProxyQueryListener extends ForwardingListener {
                 .players(r.getPlayers())
                 .gameVersion(r.getVersion())
                 .build());
+        return null;
     }
 }
@@ -18,18 +18,20 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import de.themoep.snap.Snap;
 import net.md_5.bungee.api.event.ProxyReloadEvent;
 
-public class ProxyReloadListener extends ForwardingListener {
+public class ProxyReloadListener extends ForwardingListener<com.velocitypowered.api.event.proxy.ProxyReloadEvent> {
 
     public ProxyReloadListener(Snap snap) {
-        super(snap, ProxyReloadEvent.class);
+        super(snap, com.velocitypowered.api.event.proxy.ProxyReloadEvent.class, ProxyReloadEvent.class);
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.proxy.ProxyReloadEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ProxyReloadEvent(snap.getBungeeAdapter().getProxy().getConsole()));
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.proxy.ProxyReloadEvent event, PostOrder band) {
+        callEvent(getSharedEvent(event, band, () -> new ProxyReloadEvent(snap.getBungeeAdapter().getProxy().getConsole())), band);
+        return null;
     }
 }
@@ -18,7 +18,8 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
 import de.themoep.snap.Snap;
 import de.themoep.snap.forwarding.SnapServerInfo;
@@ -26,15 +27,21 @@ import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.event.ServerConnectEvent;
 
 import java.util.Objects;
+import java.util.UUID;
 
-public class ServerConnectListener extends ForwardingListener {
+public class ServerConnectListener extends ForwardingListener<ServerPreConnectEvent> {
 
     public ServerConnectListener(Snap snap) {
-        super(snap, ServerConnectEvent.class);
+        super(snap, ServerPreConnectEvent.class, ServerConnectEvent.class);
     }
 
-    @Subscribe
-    public void on(ServerPreConnectEvent event) {
+    @Override
+    protected UUID getPlayerId(ServerPreConnectEvent event) {
+        return event.getPlayer().getUniqueId();
+    }
+
+    @Override
+    public EventTask forward(ServerPreConnectEvent event, PostOrder band) {
         ServerInfo targetServer = snap.getServerInfo(event.getResult().getServer()
                 .orElse(snap.getProxy().getConfiguration().getAttemptConnectionOrder().stream()
                         .map(serverName -> snap.getProxy().getServer(serverName).orElse(null))
@@ -45,21 +52,26 @@ public class ServerConnectListener extends ForwardingListener {
         if (targetServer == null) {
             event.setResult(ServerPreConnectEvent.ServerResult.denied());
             snap.getLogger().warn("No target server found for " + event.getPlayer().getUsername() + "! Denying connection. Please make sure you have valid servers in your 'try' config list!");
-            return;
+            return null;
         }
 
-        ServerConnectEvent e = new ServerConnectEvent(
+        ServerConnectEvent e = getSharedEvent(event, band, () -> new ServerConnectEvent(
                 snap.getPlayer(event.getPlayer()),
                 targetServer,
                 ServerConnectEvent.Reason.UNKNOWN,
                 null
-        );
+        ));
+        if (e.getTarget() != targetServer) {
+            // A Velocity plugin changed the target between the bands
+            e.setTarget(targetServer);
+        }
         e.setCancelled(!event.getResult().isAllowed());
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+        callEvent(e, band);
         if (e.isCancelled()) {
             event.setResult(ServerPreConnectEvent.ServerResult.denied());
         } else {
             event.setResult(ServerPreConnectEvent.ServerResult.allowed(((SnapServerInfo) e.getTarget()).getServer()));
         }
+        return null;
     }
 }
@@ -18,22 +18,29 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import de.themoep.snap.Snap;
-import de.themoep.snap.forwarding.SnapServer;
+import de.themoep.snap.forwarding.SnapPlayer;
 import net.md_5.bungee.api.event.ServerConnectedEvent;
 
-public class ServerConnectedListener extends ForwardingListener {
+import java.util.UUID;
+
+public class ServerConnectedListener extends ForwardingListener<com.velocitypowered.api.event.player.ServerConnectedEvent> {
 
     public ServerConnectedListener(Snap snap) {
-        super(snap, ServerConnectedEvent.class);
+        super(snap, com.velocitypowered.api.event.player.ServerConnectedEvent.class, ServerConnectedEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(com.velocitypowered.api.event.player.ServerConnectedEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(com.velocitypowered.api.event.player.ServerConnectedEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ServerConnectedEvent(
-                snap.getPlayer(event.getPlayer()),
-                new SnapServer(snap, event.getPlayer(), event.getServer()))
-        );
+    @Override
+    public EventTask forward(com.velocitypowered.api.event.player.ServerConnectedEvent event, PostOrder band) {
+        SnapPlayer player = snap.getPlayer(event.getPlayer());
+        callEvent(getSharedEvent(event, band, () -> new ServerConnectedEvent(player, player.getServer(event.getServer()))), band);
+        return null;
     }
 }
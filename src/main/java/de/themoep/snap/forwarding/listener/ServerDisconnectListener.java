@@ -18,24 +18,25 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
-import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.KickedFromServerEvent;
 import de.themoep.snap.Snap;
 import net.md_5.bungee.api.event.ServerDisconnectEvent;
 
-public class ServerDisconnectListener extends ForwardingListener {
+public class ServerDisconnectListener extends ForwardingListener<KickedFromServerEvent> {
 
     // TODO: Find better implementation as this has no real Velocity equivalent
     public ServerDisconnectListener(Snap snap) {
-        super(snap, ServerDisconnectEvent.class);
+        super(snap, KickedFromServerEvent.class, ServerDisconnectEvent.class, PostOrder.LAST);
     }
 
-    @Subscribe(order = PostOrder.LAST)
-    public void on(KickedFromServerEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ServerDisconnectEvent(
+    @Override
+    public EventTask forward(KickedFromServerEvent event, PostOrder band) {
+        callEvent(new ServerDisconnectEvent(
                 snap.getPlayer(event.getPlayer()),
                 snap.getServerInfo(event.getServer())
-        ));
+        ), band);
+        return null;
     }
 }
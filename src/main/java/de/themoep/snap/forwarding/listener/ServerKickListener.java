@@ -18,31 +18,45 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.player.KickedFromServerEvent;
 import de.themoep.snap.Snap;
 import de.themoep.snap.SnapUtils;
 import de.themoep.snap.forwarding.SnapServerInfo;
+import de.themoep.snap.forwarding.event.TrackedServerKickEvent;
 import net.md_5.bungee.api.event.ServerKickEvent;
 
-public class ServerKickListener extends ForwardingListener {
+import java.util.UUID;
+
+public class ServerKickListener extends ForwardingListener<KickedFromServerEvent> {
 
     public ServerKickListener(Snap snap) {
-        super(snap, ServerKickEvent.class);
+        super(snap, KickedFromServerEvent.class, ServerKickEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(KickedFromServerEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(KickedFromServerEvent event) {
-        ServerKickEvent e = new ServerKickEvent(
+    @Override
+    public EventTask forward(KickedFromServerEvent event, PostOrder band) {
+        boolean allowed = event.getResult().isAllowed();
+        TrackedServerKickEvent e = getSharedEvent(event, band, () -> new TrackedServerKickEvent(
                 snap.getPlayer(event.getPlayer()),
                 snap.getServerInfo(event.getServer()),
                 SnapUtils.convertComponent(event.getServerKickReason().orElse(null)),
                 event.getResult() instanceof KickedFromServerEvent.RedirectPlayer ? snap.getServerInfo(((KickedFromServerEvent.RedirectPlayer) event.getResult()).getServer()) : null,
                 event.kickedDuringServerConnect() ? ServerKickEvent.State.CONNECTING : ServerKickEvent.State.CONNECTED,
                 ServerKickEvent.Cause.UNKNOWN
-        );
-        e.setCancelled(!event.getResult().isAllowed());
-        snap.getBungeeAdapter().getPluginManager().callEvent(e);
+        ));
+        e.setCancelled(!allowed);
+        callEvent(e, band);
+        if (e.isCancelled() != allowed && !e.isReasonModified() && !e.isCancelServerModified()) {
+            // Nothing changed, keep Velocity's result
+            return null;
+        }
         if (e.isCancelled()) {
             if (e.getCancelServer() != null) {
                 event.setResult(KickedFromServerEvent.RedirectPlayer.create(((SnapServerInfo) e.getCancelServer()).getServer(), SnapUtils.convertComponent(e.getKickReasonComponent())));
@@ -52,5 +66,6 @@ public class ServerKickListener extends ForwardingListener {
         } else {
             event.setResult(KickedFromServerEvent.DisconnectPlayer.create(SnapUtils.convertComponent(e.getKickReasonComponent())));
         }
+        return null;
     }
 }
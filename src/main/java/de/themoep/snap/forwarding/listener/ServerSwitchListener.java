@@ -18,19 +18,28 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import de.themoep.snap.Snap;
 import net.md_5.bungee.api.event.ServerSwitchEvent;
 
-public class ServerSwitchListener extends ForwardingListener {
+import java.util.UUID;
+
+public class ServerSwitchListener extends ForwardingListener<ServerPostConnectEvent> {
 
     public ServerSwitchListener(Snap snap) {
-        super(snap, ServerSwitchEvent.class);
+        super(snap, ServerPostConnectEvent.class, ServerSwitchEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(ServerPostConnectEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(ServerPostConnectEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new ServerSwitchEvent(snap.getPlayer(event.getPlayer()), snap.getServerInfo(event.getPreviousServer())));
+    @Override
+    public EventTask forward(ServerPostConnectEvent event, PostOrder band) {
+        callEvent(getSharedEvent(event, band, () -> new ServerSwitchEvent(snap.getPlayer(event.getPlayer()), snap.getServerInfo(event.getPreviousServer()))), band);
+        return null;
     }
 }
@@ -18,19 +18,73 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.PlayerSettingsChangedEvent;
 import de.themoep.snap.Snap;
+import de.themoep.snap.forwarding.SnapPlayer;
 import net.md_5.bungee.api.event.SettingsChangedEvent;
 
-public class SettingsChangedListener extends ForwardingListener {
+import java.util.UUID;
+
+public class SettingsChangedListener extends ForwardingListener<PlayerSettingsChangedEvent> {
 
     public SettingsChangedListener(Snap snap) {
-        super(snap, SettingsChangedEvent.class);
+        super(snap, PlayerSettingsChangedEvent.class, SettingsChangedEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(PlayerSettingsChangedEvent event) {
+        return event.getPlayer().getUniqueId();
+    }
+
+    @Override
+    public EventTask forward(PlayerSettingsChangedEvent event, PostOrder band) {
+        SnapPlayer player = snap.getPlayer(event.getPlayer());
+        player.refreshSettings(event.getPlayerSettings());
+        callEvent(getSharedEvent(event, band, () -> new SettingsChangedEvent(player)), band);
+        return null;
+    }
+
+    @Override
+    public Object createSubscriber() {
+        return new Subscriber(this);
     }
 
-    @Subscribe
-    public void on(PlayerSettingsChangedEvent event) {
-        snap.getBungeeAdapter().getPluginManager().callEvent(new SettingsChangedEvent(snap.getPlayer(event.getPlayer())));
+    /**
+     * Subscribes to every post order without requiring async execution so that the event can be forwarded inline
+     */
+    public static class Subscriber {
+        private final SettingsChangedListener listener;
+
+        private Subscriber(SettingsChangedListener listener) {
+            this.listener = listener;
+        }
+
+        @Subscribe(order = PostOrder.FIRST, async = false)
+        public EventTask first(PlayerSettingsChangedEvent event) {
+            return listener.subscribed(event, PostOrder.FIRST);
+        }
+
+        @Subscribe(order = PostOrder.EARLY, async = false)
+        public EventTask early(PlayerSettingsChangedEvent event) {
+            return listener.subscribed(event, PostOrder.EARLY);
+        }
+
+        @Subscribe(order = PostOrder.NORMAL, async = false)
+        public EventTask normal(PlayerSettingsChangedEvent event) {
+            return listener.subscribed(event, PostOrder.NORMAL);
+        }
+
+        @Subscribe(order = PostOrder.LATE, async = false)
+        public EventTask late(PlayerSettingsChangedEvent event) {
+            return listener.subscribed(event, PostOrder.LATE);
+        }
+
+        @Subscribe(order = PostOrder.LAST, async = false)
+        public EventTask last(PlayerSettingsChangedEvent event) {
+            return listener.subscribed(event, PostOrder.LAST);
+        }
     }
 }
@@ -18,27 +18,88 @@ package de.themoep.snap.forwarding.listener;
  * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.TabCompleteEvent;
 import de.themoep.snap.Snap;
-import de.themoep.snap.forwarding.SnapServer;
 import net.md_5.bungee.api.event.TabCompleteResponseEvent;
+import net.md_5.bungee.api.plugin.Event;
 
-public class TabCompleteResponseListener extends ForwardingListener {
+import java.util.List;
+import java.util.UUID;
+
+public class TabCompleteResponseListener extends ForwardingListener<TabCompleteEvent> {
 
     public TabCompleteResponseListener(Snap snap) {
-        super(snap, TabCompleteResponseEvent.class);
+        super(snap, TabCompleteEvent.class, TabCompleteResponseEvent.class);
+    }
+
+    @Override
+    protected UUID getPlayerId(TabCompleteEvent event) {
+        return event.getPlayer().getUniqueId();
     }
 
-    @Subscribe
-    public void on(TabCompleteEvent event) {
-        TabCompleteResponseEvent e = snap.getBungeeAdapter().getPluginManager().callEvent(new TabCompleteResponseEvent(
-                event.getPlayer().getCurrentServer().map(s -> new SnapServer(snap, s)).orElse(null),
+    @Override
+    public EventTask forward(TabCompleteEvent event, PostOrder band) {
+        TabCompleteResponseEvent e = callEvent(getSharedEvent(event, band, () -> new TabCompleteResponseEvent(
+                snap.getPlayer(event.getPlayer()).getServer(),
                 snap.getPlayer(event.getPlayer()),
                 event.getSuggestions()
-        ));
+        )), band);
         if (e.isCancelled()) {
             event.getSuggestions().clear();
         }
+        return null;
+    }
+
+    @Override
+    protected Event snapshot(Event event) {
+        // The suggestions are Velocity's live list which gets sent to the client
+        TabCompleteResponseEvent e = (TabCompleteResponseEvent) event;
+        TabCompleteResponseEvent copy = new TabCompleteResponseEvent(e.getSender(), e.getReceiver(), List.copyOf(e.getSuggestions()));
+        copy.setCancelled(e.isCancelled());
+        return copy;
+    }
+
+    @Override
+    public Object createSubscriber() {
+        return new Subscriber(this);
+    }
+
+    /**
+     * Subscribes to every post order without requiring async execution so that the event can be forwarded inline
+     */
+    public static class Subscriber {
+        private final TabCompleteResponseListener listener;
+
+        private Subscriber(TabCompleteResponseListener listener) {
+            this.listener = listener;
+        }
+
+        @Subscribe(order = PostOrder.FIRST, async = false)
+        public EventTask first(TabCompleteEvent event) {
+            return listener.subscribed(event, PostOrder.FIRST);
+        }
+
+        @Subscribe(order = PostOrder.EARLY, async = false)
+        public EventTask early(TabCompleteEvent event) {
+            return listener.subscribed(event, PostOrder.EARLY);
+        }
+
+        @Subscribe(order = PostOrder.NORMAL, async = false)
+        public EventTask normal(TabCompleteEvent event) {
+            return listener.subscribed(event, PostOrder.NORMAL);
+        }
+
+        @Subscribe(order = PostOrder.LATE, async = false)
+        public EventTask late(TabCompleteEvent event) {
+            return listener.subscribed(event, PostOrder.LATE);
+        }
+
+        @Subscribe(order = PostOrder.LAST, async = false)
+        public EventTask last(TabCompleteEvent event) {
+            return listener.subscribed(event, PostOrder.LAST);
+        }
     }
 }
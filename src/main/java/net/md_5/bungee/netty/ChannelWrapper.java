@@ -6,7 +6,7 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import java.net.SocketAddress;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import net.md_5.bungee.protocol.DefinedPacket;
 import net.md_5.bungee.protocol.MinecraftDecoder;
 import net.md_5.bungee.protocol.MinecraftEncoder;
@@ -25,16 +25,37 @@ public class ChannelWrapper {
     // Configuração parametrizada do delay de fechamento
     private static final long CLOSE_DELAY = Long.getLong("bungee.closeDelay", 250L);
 
+    // Estado em um único int em vez de dois AtomicBoolean por jogador
+    private static final int CLOSING = 1;
+    private static final int CLOSED = 2;
+    private static final AtomicIntegerFieldUpdater<ChannelWrapper> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ChannelWrapper.class, "state");
+
     private final Channel ch;
     private SocketAddress remoteAddress;
-    private final AtomicBoolean closed = new AtomicBoolean();
-    private final AtomicBoolean closing = new AtomicBoolean();
+    private volatile int state;
 
     public ChannelWrapper(Channel ch) {
         this.ch = ch;
-        this.remoteAddress = (this.ch.remoteAddress() != null)
-                ? this.ch.remoteAddress()
-                : this.ch.parent().localAddress();
+        // Capturado já na criação, depois que o canal fechar ele não tem mais endereço remoto
+        this.remoteAddress = (ch.remoteAddress() != null)
+                ? ch.remoteAddress()
+                : ch.parent().localAddress();
+    }
+
+    /**
+     * Marca um estado
+     * @return true se o estado ainda não estava marcado
+     */
+    private boolean mark(int flag) {
+        int current;
+        do {
+            current = state;
+            if ((current & flag) != 0) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, current | flag));
+        return true;
     }
 
     // Métodos de protocolo implementados corretamente
@@ -61,7 +82,7 @@ public class ChannelWrapper {
 
     // Escrita com tratamento de erros
     public void write(Object packet) {
-        if (closed.get()) {
+        if (isClosed()) {
             throw new IllegalStateException("Tentativa de escrever em canal fechado");
         }
 
@@ -99,8 +120,8 @@ public class ChannelWrapper {
     }
 
     public void close(Object packet) {
-        if (closed.compareAndSet(false, true)) {
-            closing.set(true);
+        if (mark(CLOSED)) {
+            mark(CLOSING);
             if (packet != null && ch.isActive()) {
                 ch.writeAndFlush(packet)
                         .addListeners(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE, ChannelFutureListener.CLOSE);
@@ -113,7 +134,7 @@ public class ChannelWrapper {
 
     // Fechamento com delay parametrizado
     public void delayedClose(Kick kick) {
-        if (closing.compareAndSet(false, true)) {
+        if (mark(CLOSING)) {
             ch.eventLoop().schedule(() -> close(kick), CLOSE_DELAY, TimeUnit.MILLISECONDS);
         }
     }
@@ -150,11 +171,11 @@ public class ChannelWrapper {
 
     // Gerenciamento de estado seguro
     public boolean isClosed() {
-        return closed.get();
+        return (state & CLOSED) != 0;
     }
 
     public boolean isClosing() {
-        return closing.get();
+        return (state & CLOSING) != 0;
     }
 
     // Restante dos métodos mantidos com melhorias
@@ -184,8 +205,8 @@ public class ChannelWrapper {
     }
 
     public void markClosed() {
-        closing.set(true);
-        closed.set(true);
+        mark(CLOSING);
+        mark(CLOSED);
     }
 
     public Channel getHandle() {
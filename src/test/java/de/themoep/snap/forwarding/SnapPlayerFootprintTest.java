@@ -0,0 +1,69 @@
+package de.themoep.snap.forwarding;
+
+/*
+ * Snap
+ * Copyright (c) 2026 Max Lee aka Phoenix616 (max@themoep.de)
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.velocitypowered.proxy.connection.MinecraftConnection;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import de.themoep.snap.Snap;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures how many bytes of heap every {@link SnapPlayer} retains on top of the Velocity player it wraps
+ * so that regressions of the per-player footprint show up in the build.
+ * The budget can be changed with the snap.footprint.budget system property.
+ */
+class SnapPlayerFootprintTest {
+    private static final long BUDGET = Long.getLong("snap.footprint.budget", 2048);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1000, 10000})
+    void retainedBytesPerPlayer(int count) {
+        Snap snap = mock(Snap.class);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        MinecraftConnection connection = mock(MinecraftConnection.class);
+        when(connection.getChannel()).thenReturn(channel);
+        ConnectedPlayer player = mock(ConnectedPlayer.class);
+        when(player.getConnection()).thenReturn(connection);
+        when(player.getUsername()).thenReturn("Player");
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        SnapPlayer[] players = new SnapPlayer[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = new SnapPlayer(snap, player);
+        }
+
+        // Everything that is reachable from the shared Velocity state doesn't count towards the players
+        GraphLayout shared = GraphLayout.parseInstance(snap, player, connection, channel);
+        GraphLayout retained = GraphLayout.parseInstance((Object[]) players).subtract(shared);
+        long perPlayer = retained.totalSize() / count;
+        System.out.println(count + " simulated players retain " + perPlayer + " bytes per SnapPlayer");
+        System.out.println(retained.toFootprint());
+
+        assertTrue(perPlayer <= BUDGET, "SnapPlayer retains " + perPlayer + " bytes, more than the budget of " + BUDGET);
+    }
+}